@@ -1,28 +1,37 @@
 package core.ast;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import core.gen.rpc.Language;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
+/**
+ * Identifies a cached AST by a 128-bit fingerprint of its source, so the cache doesn't hold onto
+ * (or rehash) whole files for its keys.
+ */
 public class AstCacheKey {
 
-  public final String source;
+  public final HashCode fingerprint;
   public final Language language;
 
   public AstCacheKey(String source, Language language) {
-    this.source = source;
+    this.fingerprint = Hashing.murmur3_128().hashString(source, StandardCharsets.UTF_8);
     this.language = language;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(source, language);
+    return Objects.hash(fingerprint, language);
   }
 
   @Override
   public boolean equals(Object obj) {
     if (obj instanceof AstCacheKey) {
       AstCacheKey other = (AstCacheKey) obj;
-      return Objects.equals(source, other.source) && Objects.equals(language, other.language);
+      return (
+        Objects.equals(fingerprint, other.fingerprint) && Objects.equals(language, other.language)
+      );
     } else {
       return false;
     }
@@ -6,6 +6,9 @@ import java.util.Optional;
 
 public class AstCacheValue {
 
+  // Rough heap cost of a token, along with its range, code, and share of the nodes above it.
+  private static final int bytesPerToken = 256;
+
   public final AstParent root;
   public final Optional<AstSyntaxError> syntaxError;
 
@@ -13,4 +16,10 @@ public class AstCacheValue {
     this.root = root;
     this.syntaxError = syntaxError;
   }
+
+  /** An estimate of the bytes retained by this AST, used to weigh it in the cache. */
+  public int estimatedBytes() {
+    long bytes = (long) root.tokens().size() * bytesPerToken;
+    return (int) Math.min(bytes, Integer.MAX_VALUE);
+  }
 }
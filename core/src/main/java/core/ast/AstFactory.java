@@ -2,6 +2,7 @@ package core.ast;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import core.ast.Ast;
 import core.ast.api.AstNewline;
@@ -16,17 +17,20 @@ import core.converter.ParseTreeToAstConverter;
 import core.converter.ParseTreeToAstConverterFactory;
 import core.exception.SafeToDisplayException;
 import core.gen.rpc.Language;
+import core.parser.ParseResult;
 import core.parser.ParseTree;
 import core.parser.Parser;
-import core.util.LinePositionConverter;
 import core.util.Range;
+import core.util.SourceIndex;
 import core.util.Whitespace;
+import core.util.WordIndex;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -41,10 +45,34 @@ import javax.inject.Singleton;
 @Singleton
 public class AstFactory {
 
+  // Weighed by the estimated size of each AST, so a few large files can't push out everyone
+  // else's, and capped at a share of the heap rather than a number of entries.
   private Cache<AstCacheKey, AstCacheValue> astCache = CacheBuilder
     .newBuilder()
-    .maximumSize(1000)
+    .maximumWeight(
+      Runtime.getRuntime().maxMemory() /
+      100 *
+      Integer.parseInt(Optional.ofNullable(System.getenv("AST_CACHE_HEAP_PERCENT")).orElse("25"))
+    )
+    .weigher((AstCacheKey key, AstCacheValue value) -> value.estimatedBytes())
     .expireAfterWrite(5, TimeUnit.MINUTES)
+    .recordStats()
+    .build();
+
+  // Keyed on the source string itself (weak keys compare by identity), so the index is shared by
+  // everything handed the same source and goes away along with it.
+  private Cache<String, SourceIndex> sourceIndexes = CacheBuilder
+    .newBuilder()
+    .weakKeys()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
+  private Cache<String, WordIndex> wordIndexes = CacheBuilder
+    .newBuilder()
+    .weakKeys()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
     .build();
 
   @Inject
@@ -62,7 +90,8 @@ public class AstFactory {
   @Inject
   public AstFactory() {}
 
-  private List<AstToken> hiddenTokens(String source, int start, int stop) {
+  private List<AstToken> hiddenTokens(SourceIndex index, int start, int stop) {
+    String source = index.source;
     List<AstToken> nodes = new ArrayList<>();
     while (start < stop && start != source.length()) {
       if (source.charAt(start) == '\n') {
@@ -70,8 +99,8 @@ public class AstFactory {
         start++;
       } else {
         // Stop at next non-whitespace or newline.
-        int nextNewLine = whitespace.nextNewline(source, start);
-        int nonWhitespace = whitespace.lineNonWhitespaceStart(source, start);
+        int nextNewLine = index.lineEnd(start);
+        int nonWhitespace = index.lineNonWhitespaceStart(start);
         int nextStart = Math.min(nextNewLine, stop);
 
         // starts of lines that are not blank.
@@ -98,6 +127,7 @@ public class AstFactory {
     AstParent root,
     List<Ast.Comment> comments
   ) {
+    SourceIndex index = sourceIndex(source);
     List<AstToken> tokens = new ArrayList<>();
     List<AstToken> visibleTokens = new ArrayList<>(
       root.find(AstToken.class).collect(Collectors.toList())
@@ -105,20 +135,20 @@ public class AstFactory {
     for (Ast.Comment comment : comments) {
       visibleTokens.addAll(comment.find(AstToken.class).collect(Collectors.toList()));
     }
-    Collections.sort(visibleTokens, Comparator.comparingInt(t -> t.range.start));
+    Collections.sort(visibleTokens, Comparator.comparingInt(t -> t.range().start));
     if (visibleTokens.size() > 0) {
       int previousHiddenStart = 0;
       for (AstToken visibleToken : visibleTokens) {
         // add leading hidden tokens.
-        tokens.addAll(hiddenTokens(source, previousHiddenStart, visibleToken.range.start));
+        tokens.addAll(hiddenTokens(index, previousHiddenStart, visibleToken.range().start));
         tokens.add(visibleToken);
-        previousHiddenStart = visibleToken.range.stop;
+        previousHiddenStart = visibleToken.range().stop;
       }
 
       // add final trailing hidden tokens.
-      tokens.addAll(hiddenTokens(source, previousHiddenStart, source.length()));
+      tokens.addAll(hiddenTokens(index, previousHiddenStart, source.length()));
     } else {
-      tokens.addAll(hiddenTokens(source, 0, source.length()));
+      tokens.addAll(hiddenTokens(index, 0, source.length()));
     }
 
     return tokens;
@@ -129,29 +159,25 @@ public class AstFactory {
     return token;
   }
 
-  private List<ParseTree> errors(ParseTree root) {
-    List<ParseTree> errors = new ArrayList<>();
-    errors(root, errors);
-    return errors;
-  }
-
-  private void errors(ParseTree node, List<ParseTree> errors) {
-    if (node.getType().equals("ERROR")) {
-      errors.add(node);
-    } else {
-      node.getChildren().stream().forEach(c -> errors(c, errors));
-    }
+  public AstCacheValue parseSource(String source, Language language, boolean parseEmbedded) {
+    return parseSource(Optional.empty(), source, language, parseEmbedded);
   }
 
-  public AstCacheValue parseSource(String source, Language language, boolean parseEmbedded) {
+  public AstCacheValue parseSource(
+    Optional<String> session,
+    String source,
+    Language language,
+    boolean parseEmbedded
+  ) {
     try {
-      ParseTree parseTree = parser.parse(source, language);
+      ParseResult parsed = parser.parse(session, source, language);
+      ParseTree parseTree = parsed.tree;
       Optional<AstSyntaxError> syntaxError = Optional.empty();
-      if (errors(parseTree).size() > 0) {
-        ParseTree token = errors(parseTree).get(0);
-        int position = token.getStart();
-        int line = new LinePositionConverter(source).position(position);
-        int column = position - whitespace.lineStart(source, position);
+      if (parsed.errorStart.isPresent()) {
+        int position = parsed.errorStart.get();
+        SourceIndex index = sourceIndex(source);
+        int line = index.line(position);
+        int column = position - index.lineStart(position);
         syntaxError = Optional.of(new AstSyntaxError(line, column, position));
       }
       AstParent result = convertParseTreeToAst(source, parseTree, language);
@@ -193,6 +219,8 @@ public class AstFactory {
         }
       }
 
+      // cached roots are shared across threads, so don't leave a lazy refresh pending.
+      result.tree().refreshTokens();
       return new AstCacheValue(result, syntaxError);
     } catch (UnsupportedEncodingException e) {
       throw new RuntimeException(e);
@@ -278,19 +306,72 @@ public class AstFactory {
     return createFileRoot(source, language, false, true);
   }
 
+  /**
+   * Returns the cached root for the source, parsing incrementally from the session's previous
+   * source on a miss. Callers that know which editor session a source came from should use this
+   * first, so later lookups by source alone are cache hits.
+   */
+  public AstParent createImmutableFileRoot(String session, String source, Language language) {
+    return cachedValue(Optional.of(session), source, language, true).root;
+  }
+
   public AstParent createFileRoot(
     String source,
     Language language,
     boolean mutable,
     boolean parseEmbedded
   ) {
-    AstCacheValue value;
+    AstCacheValue value = cachedValue(Optional.empty(), source, language, parseEmbedded);
+    if (!mutable) {
+      return value.root;
+    }
+
+    return clone(value.root);
+  }
+
+  /** The line index for source, shared with every other caller that has the same string. */
+  public SourceIndex sourceIndex(String source) {
+    try {
+      return sourceIndexes.get(source, () -> new SourceIndex(source));
+    } catch (Exception e) {
+      throw new RuntimeException("Source index error", e);
+    }
+  }
+
+  /** The word index for source, shared like sourceIndex. */
+  public WordIndex wordIndex(String source) {
+    try {
+      return wordIndexes.get(source, () -> new WordIndex(source));
+    } catch (Exception e) {
+      throw new RuntimeException("Word index error", e);
+    }
+  }
+
+  /** Hit, miss, eviction, and load time counts for the AST cache. */
+  public Map<String, Object> cacheStats() {
+    CacheStats stats = astCache.stats();
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("size", astCache.size());
+    result.put("hits", stats.hitCount());
+    result.put("misses", stats.missCount());
+    result.put("hitRate", stats.hitRate());
+    result.put("evictions", stats.evictionCount());
+    result.put("loadMillis", TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime()));
+    result.put("averageLoadMillis", stats.averageLoadPenalty() / 1e6);
+    return result;
+  }
+
+  private AstCacheValue cachedValue(
+    Optional<String> session,
+    String source,
+    Language language,
+    boolean parseEmbedded
+  ) {
     try {
-      value =
-        astCache.get(
-          new AstCacheKey(source, language),
-          () -> parseSource(source, language, parseEmbedded)
-        );
+      return astCache.get(
+        new AstCacheKey(source, language),
+        () -> parseSource(session, source, language, parseEmbedded)
+      );
     } catch (UncheckedExecutionException e) {
       if (e.getCause() instanceof SafeToDisplayException) {
         throw ((SafeToDisplayException) e.getCause());
@@ -299,12 +380,6 @@ public class AstFactory {
     } catch (Exception e) {
       throw new RuntimeException("AST parse error", e);
     }
-
-    if (!mutable) {
-      return value.root;
-    }
-
-    return clone(value.root);
   }
 
   public AstNewline createNewline() {
@@ -112,7 +112,24 @@ public interface AstNode {
   }
 
   default <T> Stream<T> find(Class<T> type) {
-    return filter(e -> type.isAssignableFrom(e.getClass())).map(type::cast);
+    return Optional
+      .ofNullable(tree())
+      .flatMap(tree -> tree.nodeIndex(this))
+      .flatMap(index -> index.find(this, type))
+      .orElseGet(() -> filter(e -> type.isAssignableFrom(e.getClass())).map(type::cast));
+  }
+
+  // nodes in the subtree of the given type whose ranges overlap the given range.
+  default <T> Stream<T> find(Class<T> type, Range range) {
+    return Optional
+      .ofNullable(tree())
+      .flatMap(tree -> tree.nodeIndex(this))
+      .flatMap(index -> index.find(this, type, range))
+      .orElseGet(
+        () ->
+          filter(e -> type.isAssignableFrom(e.getClass()) && e.range().overlaps(range))
+            .map(type::cast)
+      );
   }
 
   default Optional<AstToken> firstVisibleToken() {
@@ -251,8 +268,8 @@ public interface AstNode {
       return new Range(0, 0);
     }
     return new Range(
-      tree().tokens().get(range.start).range.start,
-      tree().tokens().get(range.stop - 1).range.stop
+      tree().tokens().get(range.start).range().start,
+      tree().tokens().get(range.stop - 1).range().stop
     );
   }
 
@@ -286,13 +303,13 @@ public interface AstNode {
 
   default Optional<Range> tokenRange() {
     return firstVisibleToken()
-      .map(first -> new Range(first.index, lastVisibleToken().get().index + 1));
+      .map(first -> new Range(first.index(), lastVisibleToken().get().index() + 1));
   }
 
   default Range tokenRangeWithCommentsAndWhitespace() {
     return new Range(
-      rightMostLeft(AstToken.class).map(t -> t.index + 1).orElse(0),
-      leftMostRight(AstToken.class).map(t -> t.index).orElse(tree().tokens().size())
+      rightMostLeft(AstToken.class).map(t -> t.index() + 1).orElse(0),
+      leftMostRight(AstToken.class).map(t -> t.index()).orElse(tree().tokens().size())
     );
   }
 
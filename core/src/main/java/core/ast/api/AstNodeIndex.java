@@ -0,0 +1,148 @@
+package core.ast.api;
+
+import core.util.Range;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Nodes in a tree grouped by every class and interface they're an instance of, in document
+ * order. Each node is numbered in pre-order along with where its subtree ends, so finding the
+ * nodes of a type under any node is a binary search rather than a walk of the subtree.
+ */
+class AstNodeIndex {
+
+  private static Map<Class<?>, List<Class<?>>> supertypes = new ConcurrentHashMap<>();
+
+  private static class Nodes {
+
+    private int size = 0;
+    private int[] positions = new int[8];
+    private List<AstNode> nodes = new ArrayList<>();
+
+    public void add(int position, AstNode node) {
+      if (size == positions.length) {
+        positions = Arrays.copyOf(positions, size * 2);
+      }
+      positions[size++] = position;
+      nodes.add(node);
+    }
+
+    public int firstAtOrAfter(int position) {
+      int index = Arrays.binarySearch(positions, 0, size, position);
+      return index < 0 ? -index - 1 : index;
+    }
+  }
+
+  private final Map<AstNode, Integer> positions = new IdentityHashMap<>();
+  private final Map<Class<?>, Nodes> byType = new HashMap<>();
+  private int[] ends = new int[64];
+
+  public AstNodeIndex(AstTree tree) {
+    add(tree.root);
+    for (AstNode comment : tree.comments) {
+      add(comment);
+    }
+  }
+
+  private static List<Class<?>> supertypes(Class<?> type) {
+    return supertypes.computeIfAbsent(
+      type,
+      t -> {
+        Set<Class<?>> result = new LinkedHashSet<>();
+        addSupertypes(t, result);
+        return new ArrayList<>(result);
+      }
+    );
+  }
+
+  private static void addSupertypes(Class<?> type, Set<Class<?>> result) {
+    if (type == null || !result.add(type)) {
+      return;
+    }
+
+    addSupertypes(type.getSuperclass(), result);
+    for (Class<?> i : type.getInterfaces()) {
+      addSupertypes(i, result);
+    }
+  }
+
+  private void add(AstNode node) {
+    // comments can be attached to the root as well as listed separately, so only index them once.
+    if (positions.containsKey(node)) {
+      return;
+    }
+
+    int position = positions.size();
+    positions.put(node, position);
+    for (Class<?> type : supertypes(node.getClass())) {
+      byType.computeIfAbsent(type, t -> new Nodes()).add(position, node);
+    }
+
+    for (AstNode child : node.children()) {
+      add(child);
+    }
+
+    if (position >= ends.length) {
+      ends = Arrays.copyOf(ends, Math.max(position + 1, ends.length * 2));
+    }
+    ends[position] = positions.size();
+  }
+
+  /** Nodes of the given type in the subtree rooted at node, or empty if node isn't indexed. */
+  public <T> Optional<Stream<T>> find(AstNode node, Class<T> type) {
+    Integer position = positions.get(node);
+    if (position == null) {
+      return Optional.empty();
+    }
+
+    Nodes nodes = byType.get(type);
+    if (nodes == null) {
+      return Optional.of(Stream.empty());
+    }
+
+    int start = nodes.firstAtOrAfter(position);
+    int stop = nodes.firstAtOrAfter(ends[position]);
+    return Optional.of(nodes.nodes.subList(start, stop).stream().map(type::cast));
+  }
+
+  /**
+   * Nodes of the given type in the subtree rooted at node that overlap the range, or empty if node
+   * isn't indexed. A node's range contains the ranges of its descendants, so the subtree of any
+   * node outside of the range is skipped.
+   */
+  public <T> Optional<Stream<T>> find(AstNode node, Class<T> type, Range range) {
+    Integer position = positions.get(node);
+    if (position == null) {
+      return Optional.empty();
+    }
+
+    Nodes nodes = byType.get(type);
+    if (nodes == null) {
+      return Optional.of(Stream.empty());
+    }
+
+    List<T> result = new ArrayList<>();
+    int stop = nodes.firstAtOrAfter(ends[position]);
+    int i = nodes.firstAtOrAfter(position);
+    while (i < stop) {
+      AstNode candidate = nodes.nodes.get(i);
+      if (candidate.range().overlaps(range)) {
+        result.add(type.cast(candidate));
+        i++;
+      } else {
+        i = Math.max(i + 1, nodes.firstAtOrAfter(ends[nodes.positions[i]]));
+      }
+    }
+
+    return Optional.of(result.stream());
+  }
+}
@@ -55,6 +55,7 @@ public abstract class AstOptional<T extends AstNode>
     int tokenIndex = setupSpacingBeforeBecomingVisible();
     tokenRange().ifPresent(range -> tokens().removeAll(tokens().subList(range.start, range.stop)));
     children().clear();
+    modified();
 
     prepareForAdd(element);
 
@@ -19,10 +19,10 @@ public class AstToken implements AstNode, Cloneable {
 
   public String code;
 
-  // maintained by AstTokens
-  public Range range;
-  public int priorNewlines;
-  public int index;
+  // maintained by AstTokens, which updates them lazily, so read them through the accessors.
+  Range range;
+  int priorNewlines;
+  int index;
 
   @Override
   public List<AstNode> children() {
@@ -55,11 +55,28 @@ public class AstToken implements AstNode, Cloneable {
     return parseTree;
   }
 
+  public int index() {
+    refresh();
+    return index;
+  }
+
+  public int priorNewlines() {
+    refresh();
+    return priorNewlines;
+  }
+
   @Override
   public Range range() {
+    refresh();
     return range;
   }
 
+  private void refresh() {
+    if (tree != null) {
+      tree.refreshTokens();
+    }
+  }
+
   @Override
   public String code() {
     return this.code;
@@ -69,6 +86,11 @@ public class AstToken implements AstNode, Cloneable {
     this.code = code;
   }
 
+  /** Sets the range of a token that isn't attached to a tree yet. */
+  public void setRange(Range range) {
+    this.range = range;
+  }
+
   @Override
   public void setParseTree(Optional<ParseTree> parseTree) {
     this.parseTree = parseTree;
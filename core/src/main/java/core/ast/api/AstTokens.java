@@ -11,46 +11,55 @@ class AstTokens implements List<AstToken> {
 
   private final AstTree tree;
   private List<AstToken> inner;
+  // tokens before this index have an up-to-date range, priorNewlines, and index. volatile, so a
+  // reader that sees every token is valid also sees the fields written by the refresh.
+  private volatile int validUntil = 0;
 
   class TokensSubList implements List<AstToken> {
 
     private List<AstToken> inner;
+    private int offset;
 
-    public TokensSubList(List<AstToken> inner) {
+    public TokensSubList(List<AstToken> inner, int offset) {
       this.inner = inner;
+      this.offset = offset;
     }
 
     @Override
     public boolean add(AstToken e) {
+      invalidate(offset + inner.size());
       boolean ret = inner.add(e);
-      updateInvariants();
+      e.setTree(tree);
       return ret;
     }
 
     @Override
     public void add(int index, AstToken e) {
+      invalidate(offset + index);
       inner.add(index, e);
-      updateInvariants();
+      e.setTree(tree);
     }
 
     @Override
     public boolean addAll(Collection<? extends AstToken> c) {
+      invalidate(offset + inner.size());
       boolean ret = inner.addAll(c);
-      updateInvariants();
+      setTree(c);
       return ret;
     }
 
     @Override
     public boolean addAll(int index, Collection<? extends AstToken> c) {
+      invalidate(offset + index);
       boolean ret = inner.addAll(index, c);
-      updateInvariants();
+      setTree(c);
       return ret;
     }
 
     @Override
     public void clear() {
+      invalidate(offset);
       inner.clear();
-      updateInvariants();
     }
 
     @Override
@@ -110,36 +119,37 @@ class AstTokens implements List<AstToken> {
 
     @Override
     public boolean remove(Object e) {
+      invalidate(offset);
       boolean ret = inner.remove(e);
-      updateInvariants();
       return ret;
     }
 
     @Override
     public AstToken remove(int index) {
+      invalidate(offset + index);
       AstToken ret = inner.remove(index);
-      updateInvariants();
       return ret;
     }
 
     @Override
     public boolean removeAll(Collection<?> c) {
+      invalidate(offset);
       boolean ret = inner.removeAll(c);
-      updateInvariants();
       return ret;
     }
 
     @Override
     public boolean retainAll(Collection<?> c) {
+      invalidate(offset);
       boolean ret = inner.retainAll(c);
-      updateInvariants();
       return ret;
     }
 
     @Override
     public AstToken set(int index, AstToken e) {
+      invalidate(offset + index);
       AstToken ret = inner.set(index, e);
-      updateInvariants();
+      e.setTree(tree);
       return ret;
     }
 
@@ -150,7 +160,7 @@ class AstTokens implements List<AstToken> {
 
     @Override
     public List<AstToken> subList(int fromIndex, int toIndex) {
-      return new TokensSubList(inner.subList(fromIndex, toIndex));
+      return new TokensSubList(inner.subList(fromIndex, toIndex), offset + fromIndex);
     }
 
     @Override
@@ -172,35 +182,39 @@ class AstTokens implements List<AstToken> {
 
   @Override
   public boolean add(AstToken e) {
+    invalidate(inner.size());
     boolean ret = inner.add(e);
-    updateInvariants();
+    e.setTree(tree);
     return ret;
   }
 
   @Override
   public void add(int index, AstToken e) {
+    invalidate(index);
     inner.add(index, e);
-    updateInvariants();
+    e.setTree(tree);
   }
 
   @Override
   public boolean addAll(Collection<? extends AstToken> c) {
+    invalidate(inner.size());
     boolean ret = inner.addAll(c);
-    updateInvariants();
+    setTree(c);
     return ret;
   }
 
   @Override
   public boolean addAll(int index, Collection<? extends AstToken> c) {
+    invalidate(index);
     boolean ret = inner.addAll(index, c);
-    updateInvariants();
+    setTree(c);
     return ret;
   }
 
   @Override
   public void clear() {
+    invalidate(0);
     inner.clear();
-    updateInvariants();
   }
 
   @Override
@@ -260,36 +274,37 @@ class AstTokens implements List<AstToken> {
 
   @Override
   public boolean remove(Object e) {
+    invalidate(indexOf(e));
     boolean ret = inner.remove(e);
-    updateInvariants();
     return ret;
   }
 
   @Override
   public AstToken remove(int index) {
+    invalidate(index);
     AstToken ret = inner.remove(index);
-    updateInvariants();
     return ret;
   }
 
   @Override
   public boolean removeAll(Collection<?> c) {
+    invalidate(firstIndexOf(c));
     boolean ret = inner.removeAll(c);
-    updateInvariants();
     return ret;
   }
 
   @Override
   public boolean retainAll(Collection<?> c) {
+    invalidate(0);
     boolean ret = inner.retainAll(c);
-    updateInvariants();
     return ret;
   }
 
   @Override
   public AstToken set(int index, AstToken e) {
+    invalidate(index);
     AstToken ret = inner.set(index, e);
-    updateInvariants();
+    e.setTree(tree);
     return ret;
   }
 
@@ -300,7 +315,7 @@ class AstTokens implements List<AstToken> {
 
   @Override
   public List<AstToken> subList(int fromIndex, int toIndex) {
-    return new TokensSubList(inner.subList(fromIndex, toIndex));
+    return new TokensSubList(inner.subList(fromIndex, toIndex), fromIndex);
   }
 
   @Override
@@ -313,20 +328,77 @@ class AstTokens implements List<AstToken> {
     return inner.toArray(a);
   }
 
-  public void updateInvariants() {
-    // recompute other indexing schemes and set token reference.
+  private int firstIndexOf(Collection<?> c) {
+    int result = validUntil;
+    for (Object o : c) {
+      if (o instanceof AstToken) {
+        // tokens before validUntil have a current index, so anything else is at or after it.
+        int index = ((AstToken) o).index;
+        if (index < result && inner.get(index) == o) {
+          result = index;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private void invalidate(int index) {
+    tree.modified();
+    if (index >= 0 && index < validUntil) {
+      validUntil = index;
+    }
+  }
+
+  private void setTree(Collection<? extends AstToken> c) {
+    for (AstToken token : c) {
+      token.setTree(tree);
+    }
+  }
+
+  boolean isRefreshed() {
+    return validUntil >= inner.size();
+  }
+
+  /**
+   * Recomputes the range, line, and index of every token from the first one changed since the
+   * last call. Edits only mark where tokens became stale, so a batch of edits costs one pass over
+   * the suffix they touched, rather than one pass over the whole file per edit.
+   */
+  void refresh() {
+    if (validUntil >= inner.size()) {
+      return;
+    }
+
     int offset = 0;
     int priorNewlines = 0;
-    for (int i = 0; i < size(); i++) {
-      AstToken token = get(i);
-      token.setTree(tree);
-      token.range = new Range(offset, offset + token.code.length());
+    if (validUntil > 0) {
+      AstToken previous = inner.get(validUntil - 1);
+      offset = previous.range.stop;
+      priorNewlines = previous.priorNewlines + (previous instanceof AstNewline ? 1 : 0);
+    }
+
+    for (int i = validUntil; i < inner.size(); i++) {
+      AstToken token = inner.get(i);
+      int stop = offset + token.code.length();
+      // keep unchanged ranges, since callers might be holding onto them.
+      if (token.range == null || token.range.start != offset || token.range.stop != stop) {
+        token.range = new Range(offset, stop);
+      }
       token.priorNewlines = priorNewlines;
       token.index = i;
-      offset = token.range.stop;
+      offset = stop;
       if (token instanceof AstNewline) {
         priorNewlines++;
       }
     }
+
+    validUntil = inner.size();
+  }
+
+  public void updateInvariants() {
+    setTree(inner);
+    validUntil = 0;
+    refresh();
   }
 }
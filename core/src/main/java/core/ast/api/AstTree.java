@@ -10,6 +10,8 @@ import java.util.stream.Collectors;
 public class AstTree {
 
   private final AstTokens tokens;
+  // built when first searched from the root, and dropped whenever the tree changes.
+  private volatile AstNodeIndex nodeIndex;
 
   public final List<Ast.Comment> comments;
   public final AstFactory factory;
@@ -30,10 +32,45 @@ public class AstTree {
     this.whitespace = new AstWhitespace(this.tokens);
   }
 
-  public void updateInvariants() {
+  public synchronized void updateInvariants() {
     tokens.updateInvariants();
   }
 
+  /**
+   * Brings every token's range, line, and index up to date. Readers sharing a cached tree only take
+   * the tree's lock when there's actually something to refresh, so they don't race on it.
+   */
+  public void refreshTokens() {
+    if (tokens.isRefreshed()) {
+      return;
+    }
+
+    synchronized (this) {
+      tokens.refresh();
+    }
+  }
+
+  void modified() {
+    nodeIndex = null;
+  }
+
+  Optional<AstNodeIndex> nodeIndex(AstNode node) {
+    // rebuilding for a search from a subtree during a series of edits costs more than walking it.
+    // like refreshTokens, readers only take the lock when there's an index to build.
+    AstNodeIndex result = nodeIndex;
+    if (result != null || node != root) {
+      return Optional.ofNullable(result);
+    }
+
+    synchronized (this) {
+      if (nodeIndex == null) {
+        nodeIndex = new AstNodeIndex(this);
+      }
+
+      return Optional.of(nodeIndex);
+    }
+  }
+
   public static AstTree attachTree(
     AstFactory factory,
     AstNode root,
@@ -114,5 +151,8 @@ public class AstTree {
         previous = current;
       }
     }
+
+    // a node index built before this can still hold comments that are gone.
+    modified();
   }
 }
@@ -65,10 +65,12 @@ public abstract class AstTuple extends DefaultAstParent implements AstContainer
       Range leftTokenRange = leftToken.get().tokenRangeWithCommentsAndWhitespace();
       tokens().removeAll(tokens().subList(leftTokenRange.start, leftTokenRange.stop));
       children.get(childIndex - 1).children().remove(leftToken.get());
+      modified();
     } else if (rightToken.isPresent()) {
       Range rightTokenRange = rightToken.get().tokenRangeWithCommentsAndWhitespace();
       tokens().removeAll(tokens().subList(rightTokenRange.start, rightTokenRange.stop));
       children.get(childIndex + 1).children().remove(rightToken.get());
+      modified();
     }
   }
 }
@@ -53,16 +53,16 @@ public class AstWhitespace {
       // on, so use the previous token and then add one if using the previous one
       // lowered the count.
       AstToken beforeStop = tokens.get(tokenRange.stop - 1);
-      lineStop = beforeStop.priorNewlines + 1;
+      lineStop = beforeStop.priorNewlines() + 1;
       if (beforeStop instanceof AstNewline) {
         lineStop++;
       }
     }
-    return new Range(tokens.get(tokenRange.start).priorNewlines, lineStop);
+    return new Range(tokens.get(tokenRange.start).priorNewlines(), lineStop);
   }
 
   public int lineFromTokenIndex(int tokenIndex) {
-    return tokens.get(tokenIndex).priorNewlines;
+    return tokens.get(tokenIndex).priorNewlines();
   }
 
   public Range lineTokenRange(int line) {
@@ -70,7 +70,7 @@ public class AstWhitespace {
       ? 0
       : tokens
         .stream()
-        .filter(t -> t.priorNewlines == line - 1 && t instanceof AstNewline)
+        .filter(t -> t.priorNewlines() == line - 1 && t instanceof AstNewline)
         .findFirst()
         .map(t -> tokens.indexOf(t) + 1)
         .get();
@@ -186,6 +186,6 @@ public class AstWhitespace {
       return 1;
     }
 
-    return tokens.get(tokens.size() - 1).priorNewlines + 1;
+    return tokens.get(tokens.size() - 1).priorNewlines() + 1;
   }
 }
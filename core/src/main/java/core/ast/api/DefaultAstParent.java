@@ -29,6 +29,7 @@ public class DefaultAstParent implements AstParent, Cloneable {
 
   protected void addChild(int index, AstNode child) {
     children().add(index, child);
+    modified();
     child.setParent(Optional.of(this));
   }
 
@@ -58,6 +59,7 @@ public class DefaultAstParent implements AstParent, Cloneable {
 
   protected void addChildren(int index, List<AstNode> children) {
     this.children().addAll(index, children);
+    modified();
     children.stream().forEach(child -> child.setParent(Optional.of(this)));
   }
 
@@ -70,6 +72,12 @@ public class DefaultAstParent implements AstParent, Cloneable {
       .orElseGet(() -> tokenRangeWithCommentsAndWhitespace().start);
   }
 
+  protected void modified() {
+    if (tree != null) {
+      tree.modified();
+    }
+  }
+
   protected void removeSpacingBeforeBecomingInvisible() {
     parent().ifPresent(parent -> parent.removeSpacingForChildBecomingInvisible(this));
   }
@@ -77,15 +85,18 @@ public class DefaultAstParent implements AstParent, Cloneable {
   protected void removeAllChildren() {
     children().stream().forEach(child -> child.setParent(Optional.empty()));
     children().clear();
+    modified();
   }
 
   protected void removeChild(AstNode child) {
     children().remove(child);
     child.setParent(Optional.empty());
+    modified();
   }
 
   protected AstNode removeChild(int index) {
     AstNode ret = children().remove(index);
+    modified();
     ret.setParent(Optional.empty());
     return ret;
   }
@@ -93,6 +104,7 @@ public class DefaultAstParent implements AstParent, Cloneable {
   protected void setChild(AstNode oldChild, AstNode newChild) {
     newChild.setParent(oldChild.parent());
     children().set(children().indexOf(oldChild), newChild);
+    modified();
   }
 
   public <T> Optional<T> child(Class<T> type) {
@@ -111,7 +123,10 @@ public class DefaultAstParent implements AstParent, Cloneable {
   @Override
   public AstNode cloneTree(Optional<AstParent> parent, Map<AstToken, AstToken> oldToNewTokens) {
     try {
-      AstParent ret = (AstParent) this.clone();
+      DefaultAstParent ret = (DefaultAstParent) this.clone();
+      // the shallow copy still points at this node's tree, so detach it before setting children,
+      // or it would invalidate the original tree's index. the copy gets its own tree later.
+      ret.tree = null;
       ret.setParent(parent);
       ret.setChildren(
         ret
@@ -152,6 +167,7 @@ public class DefaultAstParent implements AstParent, Cloneable {
     } else {
       children().remove(child);
       tokens().removeAll(child.tokensInVisibleRange());
+      modified();
     }
   }
 
@@ -197,6 +213,7 @@ public class DefaultAstParent implements AstParent, Cloneable {
   @Override
   public void setChildren(List<AstNode> children) {
     this.children = children;
+    modified();
     children.stream().forEach(child -> child.setParent(Optional.of(this)));
   }
 
@@ -213,6 +230,7 @@ public class DefaultAstParent implements AstParent, Cloneable {
   @Override
   public void setTree(AstTree tree) {
     this.tree = tree;
+    modified();
   }
 
   @Override
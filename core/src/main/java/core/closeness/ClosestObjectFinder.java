@@ -1,5 +1,6 @@
 package core.closeness;
 
+import core.ast.AstFactory;
 import core.ast.api.AstList;
 import core.ast.api.AstNode;
 import core.ast.api.AstParent;
@@ -7,10 +8,8 @@ import core.ast.api.AstToken;
 import core.ast.api.IndentationUtils;
 import core.exception.CannotFindInsertionPoint;
 import core.exception.ObjectNotFound;
-import core.util.LinePositionConverter;
-import core.util.LinePositionConverter;
 import core.util.Range;
-import core.util.Whitespace;
+import core.util.SourceIndex;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -25,13 +24,13 @@ import javax.inject.Singleton;
 public class ClosestObjectFinder {
 
   @Inject
-  IndentationUtils indentationUtils;
+  AstFactory astFactory;
 
   @Inject
-  RangeComparators comparators;
+  IndentationUtils indentationUtils;
 
   @Inject
-  Whitespace whitespace;
+  RangeComparators comparators;
 
   @Inject
   public ClosestObjectFinder() {}
@@ -90,11 +89,9 @@ public class ClosestObjectFinder {
       )
       .orElse(lists);
 
-    LinePositionConverter linePositionConverter = new LinePositionConverter(source);
-    int linePosition = linePositionConverter.position(cursor);
-    boolean cursorLineIsWhitespace = whitespace.isWhitespace(
-      source.substring(whitespace.lineStart(source, cursor), whitespace.lineEnd(source, cursor))
-    );
+    SourceIndex index = astFactory.sourceIndex(source);
+    int linePosition = index.line(cursor);
+    boolean cursorLineIsWhitespace = index.lineNonWhitespaceStart(cursor) == index.lineEnd(cursor);
 
     // Try to prioritize non-multiline lists where the cursor is between elements (i.e. we're not in the middle of an element).
     List<T> nonMultilineListsWithCursorBetweenElements = restrictedLists
@@ -118,12 +115,7 @@ public class ClosestObjectFinder {
     );
     // Scan to the right when picking lists like <a></a> and if (..) {} that are on the line we're on.
     multilineLists =
-      prioritizeRightWhenListsAreOnLine(
-        linePositionConverter,
-        linePosition,
-        cursor,
-        multilineLists
-      );
+      prioritizeRightWhenListsAreOnLine(index, linePosition, cursor, multilineLists);
 
     // Break ties in python based on indentation level.
     if (cursorLineIsWhitespace) {
@@ -185,7 +177,10 @@ public class ClosestObjectFinder {
     int cursor,
     List<T> lists
   ) {
-    String cursorToBeginningOfLine = source.substring(whitespace.lineStart(source, cursor), cursor);
+    String cursorToBeginningOfLine = source.substring(
+      astFactory.sourceIndex(source).lineStart(cursor),
+      cursor
+    );
     List<T> result = lists
       .stream()
       .filter(n -> indentationUtils.indent(n).equals(cursorToBeginningOfLine))
@@ -197,7 +192,7 @@ public class ClosestObjectFinder {
   }
 
   private <T extends AstList<?>> List<T> prioritizeRightWhenListsAreOnLine(
-    LinePositionConverter linePositionConverter,
+    SourceIndex index,
     int linePosition,
     int cursor,
     List<T> lists
@@ -207,9 +202,7 @@ public class ClosestObjectFinder {
       .stream()
       .filter(
         l ->
-          linePositionConverter
-            .range(l.rangeWithCommentsAndWhitespace())
-            .equals(new Range(linePosition))
+          index.lineRange(l.rangeWithCommentsAndWhitespace()).equals(new Range(linePosition))
       )
       .collect(Collectors.toList());
 
@@ -353,11 +346,11 @@ public class ClosestObjectFinder {
   }
 
   public boolean isReasonableDistance(String source, int cursor, Range range, int threshold) {
-    LinePositionConverter converter = new LinePositionConverter(source);
-    int cursorLine = converter.position(cursor);
+    SourceIndex index = astFactory.sourceIndex(source);
+    int cursorLine = index.line(cursor);
     if (
-      Math.abs(converter.position(range.start) - cursorLine) > threshold ||
-      Math.abs(converter.position(range.stop) - cursorLine) > threshold
+      Math.abs(index.line(range.start) - cursorLine) > threshold ||
+      Math.abs(index.line(range.stop) - cursorLine) > threshold
     ) {
       return false;
     }
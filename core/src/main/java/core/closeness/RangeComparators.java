@@ -1,7 +1,8 @@
 package core.closeness;
 
-import core.util.LinePositionConverter;
+import core.ast.AstFactory;
 import core.util.Range;
+import core.util.SourceIndex;
 import java.util.Comparator;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -9,6 +10,9 @@ import javax.inject.Singleton;
 @Singleton
 public class RangeComparators {
 
+  @Inject
+  AstFactory astFactory;
+
   @Inject
   public RangeComparators() {}
 
@@ -36,25 +40,22 @@ public class RangeComparators {
   }
 
   public Comparator<Range> lineBorderDistanceToInside(String source, int cursor) {
-    LinePositionConverter linePositionConverter = new LinePositionConverter(source);
+    SourceIndex index = astFactory.sourceIndex(source);
 
     // Pick the border between this line and the next as the position.
-    int linePosition = linePositionConverter.position(cursor) + 1;
-    return Comparator.comparing(
-      e -> linePositionConverter.range(e),
-      distanceToInside(linePosition)
-    );
+    int linePosition = index.line(cursor) + 1;
+    return Comparator.comparing(e -> index.lineRange(e), distanceToInside(linePosition));
   }
 
   public Comparator<Range> lineDistanceToEndpoint(String source, int cursor) {
-    LinePositionConverter linePositionConverter = new LinePositionConverter(source);
-    int linePosition = linePositionConverter.position(cursor);
+    SourceIndex index = astFactory.sourceIndex(source);
+    int linePosition = index.line(cursor);
 
     // When positions are lines, instead of the spaces between lines, the range
     // should be inclusive.
     return Comparator.comparing(
       e -> {
-        Range r = linePositionConverter.range(e);
+        Range r = index.lineRange(e);
         return new Range(r.start, r.stop - 1);
       },
       distanceToEndpoint(linePosition)
@@ -9,28 +9,25 @@ import dagger.assisted.AssistedInject;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.slf4j.event.Level;
-import toolbelt.logging.Logs;
 
+/**
+ * The code engine requests made while evaluating a single transcript. Requests are batched with
+ * those from other sessions by the shared scheduler, and flushing waits for all of them, including
+ * any made while handling the results of earlier ones.
+ */
 public class CodeEngineBatchQueue {
 
-  private static Logger logger = LoggerFactory.getLogger(CodeEngineBatchQueue.class);
+  private List<CompletableFuture<?>> pending = new ArrayList<>();
 
-  private List<SlotContext> translateInput = new ArrayList<>();
-  private List<CompletableFuture<List<TranslationAlternative>>> translateOutput = new ArrayList<>();
-
-  private List<SlotContext> rescoreInput = new ArrayList<>();
-  private List<CompletableFuture<RescoringAlternative>> rescoreOutput = new ArrayList<>();
-
-  private CodeEngineClient codeEngineClient;
+  private CodeEngineBatchScheduler codeEngineBatchScheduler;
   public Language language;
 
   @AssistedInject
-  public CodeEngineBatchQueue(CodeEngineClient codeEngineClient, @Assisted Language language) {
-    this.codeEngineClient = codeEngineClient;
+  public CodeEngineBatchQueue(
+    CodeEngineBatchScheduler codeEngineBatchScheduler,
+    @Assisted Language language
+  ) {
+    this.codeEngineBatchScheduler = codeEngineBatchScheduler;
     this.language = language;
   }
 
@@ -39,68 +36,40 @@ public class CodeEngineBatchQueue {
     CodeEngineBatchQueue create(Language language);
   }
 
-  public CompletableFuture<List<TranslationAlternative>> translate(SlotContext slotContext) {
-    CompletableFuture<List<TranslationAlternative>> result = new CompletableFuture<>();
-    translateInput.add(slotContext);
-    translateOutput.add(result);
-    return result;
+  private synchronized <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+    pending.add(future);
+    return future;
   }
 
-  public CompletableFuture<RescoringAlternative> rescore(SlotContext slotContext) {
-    CompletableFuture<RescoringAlternative> result = new CompletableFuture<>();
-    rescoreInput.add(slotContext);
-    rescoreOutput.add(result);
+  private synchronized List<CompletableFuture<?>> takePending() {
+    List<CompletableFuture<?>> result = pending;
+    pending = new ArrayList<>();
     return result;
   }
 
-  public void flush() {
-    while (!translateInput.isEmpty() || !rescoreInput.isEmpty()) {
-      List<SlotContext> translateInputCopy = new ArrayList<>(translateInput);
-      List<CompletableFuture<List<TranslationAlternative>>> translateOutputCopy = new ArrayList<>(
-        translateOutput
-      );
-      translateInput.clear();
-      translateOutput.clear();
-
-      List<SlotContext> rescoreInputCopy = new ArrayList<>(rescoreInput);
-      List<CompletableFuture<RescoringAlternative>> rescoreOutputCopy = new ArrayList<>(
-        rescoreOutput
-      );
-      rescoreInput.clear();
-      rescoreOutput.clear();
-
-      try {
-        CompletableFuture<List<List<TranslationAlternative>>> translateFuture = codeEngineClient.translate(
-          language,
-          translateInputCopy
-        );
-
-        CompletableFuture<List<RescoringAlternative>> rescoreFuture = codeEngineClient.rescore(
-          language,
-          rescoreInputCopy
-        );
-
-        List<List<TranslationAlternative>> translateResult = translateFuture.get();
-        List<RescoringAlternative> rescoreResult = rescoreFuture.get();
+  public CompletableFuture<List<TranslationAlternative>> translate(SlotContext slotContext) {
+    return track(codeEngineBatchScheduler.translate(language, slotContext));
+  }
 
-        for (int i = 0; i < translateResult.size(); i++) {
-          translateOutputCopy.get(i).complete(translateResult.get(i));
-        }
+  public CompletableFuture<RescoringAlternative> rescore(SlotContext slotContext) {
+    return track(codeEngineBatchScheduler.rescore(language, slotContext));
+  }
 
-        for (int i = 0; i < rescoreResult.size(); i++) {
-          rescoreOutputCopy.get(i).complete(rescoreResult.get(i));
-        }
-      } catch (InterruptedException | ExecutionException e) {
-        Logs.logError(logger, "Server interrupted", e);
+  /** Completes once every request made through this queue has a result. */
+  public CompletableFuture<Void> flushAsync() {
+    List<CompletableFuture<?>> current = takePending();
+    if (current.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
 
-        for (int i = 0; i < translateInputCopy.size(); i++) {
-          translateOutputCopy.get(i).completeExceptionally(e);
-        }
+    // handling results can make more requests, so keep going until there are none left.
+    return CompletableFuture
+      .allOf(current.toArray(new CompletableFuture<?>[0]))
+      .handle((result, e) -> null)
+      .thenCompose(result -> flushAsync());
+  }
 
-        for (int i = 0; i < rescoreInputCopy.size(); i++) {
-          rescoreOutputCopy.get(i).completeExceptionally(e);
-        }
-      }
-    }
+  public void flush() {
+    flushAsync().join();
   }
 }
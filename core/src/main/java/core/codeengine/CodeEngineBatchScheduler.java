@@ -0,0 +1,210 @@
+package core.codeengine;
+
+import codeengine.gen.rpc.RescoringAlternative;
+import codeengine.gen.rpc.TranslationAlternative;
+import core.gen.rpc.Language;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import toolbelt.logging.Logs;
+
+/**
+ * Combines code engine requests from every session into batches, one per language and endpoint. A
+ * batch is sent once it's full or once the first request in it has waited for the batch window,
+ * so concurrent users share model server requests rather than each sending their own.
+ */
+@Singleton
+public class CodeEngineBatchScheduler {
+
+  private class Batch<T> {
+
+    private final String endpoint;
+    private final Language language;
+    private final BiFunction<Language, List<SlotContext>, CompletableFuture<List<T>>> send;
+    private List<SlotContext> input = new ArrayList<>();
+    private List<CompletableFuture<T>> output = new ArrayList<>();
+    // the window timer for the requests waiting in this batch, if it hasn't fired yet.
+    private Optional<ScheduledFuture<?>> window = Optional.empty();
+
+    public Batch(
+      String endpoint,
+      Language language,
+      BiFunction<Language, List<SlotContext>, CompletableFuture<List<T>>> send
+    ) {
+      this.endpoint = endpoint;
+      this.language = language;
+      this.send = send;
+    }
+
+    public synchronized CompletableFuture<T> add(SlotContext slotContext) {
+      CompletableFuture<T> result = new CompletableFuture<>();
+      input.add(slotContext);
+      output.add(result);
+      queueDepth.incrementAndGet();
+      if (input.size() >= maxBatchSize) {
+        // take the full batch right away, so the requests after it start the next one rather than
+        // growing this one before it's sent.
+        List<SlotContext> fullInput = input;
+        List<CompletableFuture<T>> fullOutput = output;
+        take();
+        executor.execute(() -> send(fullInput, fullOutput));
+      } else if (input.size() == 1) {
+        List<SlotContext> first = input;
+        window =
+          Optional.of(
+            executor.schedule(() -> sendWindow(first), batchWindowMillis, TimeUnit.MILLISECONDS)
+          );
+      }
+
+      return result;
+    }
+
+    // starts a new batch for the requests after the one being sent.
+    private void take() {
+      window.ifPresent(w -> w.cancel(false));
+      window = Optional.empty();
+      input = new ArrayList<>();
+      output = new ArrayList<>();
+    }
+
+    // sends the waiting requests once their window closes, unless they were already sent because
+    // the batch filled up.
+    private void sendWindow(List<SlotContext> expected) {
+      List<SlotContext> inputCopy;
+      List<CompletableFuture<T>> outputCopy;
+      synchronized (this) {
+        if (input != expected || input.isEmpty()) {
+          return;
+        }
+
+        inputCopy = input;
+        outputCopy = output;
+        take();
+      }
+
+      send(inputCopy, outputCopy);
+    }
+
+    private void send(List<SlotContext> inputCopy, List<CompletableFuture<T>> outputCopy) {
+      Logs.logData(
+        logger,
+        "core.code-engine-batch",
+        Map.of(
+          "endpoint",
+          endpoint,
+          "language",
+          language,
+          "batchSize",
+          inputCopy.size(),
+          "queueDepth",
+          queueDepth.getAndAdd(-inputCopy.size())
+        )
+      );
+
+      CompletableFuture<List<T>> response;
+      try {
+        response = send.apply(language, inputCopy);
+      } catch (RuntimeException e) {
+        response = CompletableFuture.failedFuture(e);
+      }
+
+      // complete each request on the evaluation pool, since whatever depends on it (snippets,
+      // selectors, diffs) would otherwise run serially on the http client's thread, for every
+      // session in the batch.
+      response.whenComplete(
+        (result, e) -> {
+          for (int i = 0; i < outputCopy.size(); i++) {
+            CompletableFuture<T> future = outputCopy.get(i);
+            if (e != null) {
+              completionExecutor.execute(() -> future.completeExceptionally(e));
+            } else if (i < result.size()) {
+              T value = result.get(i);
+              completionExecutor.execute(() -> future.complete(value));
+            } else {
+              RuntimeException missing = new RuntimeException("Missing code engine result");
+              completionExecutor.execute(() -> future.completeExceptionally(missing));
+            }
+          }
+        }
+      );
+    }
+  }
+
+  private Logger logger = LoggerFactory.getLogger(CodeEngineBatchScheduler.class);
+  private int batchWindowMillis = Integer.parseInt(
+    Optional.ofNullable(System.getenv("CODE_ENGINE_BATCH_WINDOW_MS")).orElse("5")
+  );
+  int maxBatchSize = Integer.parseInt(
+    Optional.ofNullable(System.getenv("CODE_ENGINE_MAX_BATCH_SIZE")).orElse("64")
+  );
+
+  private BiFunction<Language, List<SlotContext>, CompletableFuture<List<List<TranslationAlternative>>>> translate;
+  private BiFunction<Language, List<SlotContext>, CompletableFuture<List<RescoringAlternative>>> rescore;
+  private ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+  private Executor completionExecutor = new ForkJoinPool(
+    Runtime.getRuntime().availableProcessors()
+  );
+  private AtomicInteger queueDepth = new AtomicInteger();
+  private Map<Language, Batch<List<TranslationAlternative>>> translateBatches = new HashMap<>();
+  private Map<Language, Batch<RescoringAlternative>> rescoreBatches = new HashMap<>();
+
+  @Inject
+  public CodeEngineBatchScheduler(CodeEngineClient codeEngineClient) {
+    this(
+      (language, slotContexts) -> codeEngineClient.translate(language, slotContexts),
+      (language, slotContexts) -> codeEngineClient.rescore(language, slotContexts)
+    );
+  }
+
+  CodeEngineBatchScheduler(
+    BiFunction<Language, List<SlotContext>, CompletableFuture<List<List<TranslationAlternative>>>> translate,
+    BiFunction<Language, List<SlotContext>, CompletableFuture<List<RescoringAlternative>>> rescore
+  ) {
+    this.translate = translate;
+    this.rescore = rescore;
+  }
+
+  /** The number of requests waiting to be sent in a batch. */
+  public int queueDepth() {
+    return queueDepth.get();
+  }
+
+  public synchronized CompletableFuture<List<TranslationAlternative>> translate(
+    Language language,
+    SlotContext slotContext
+  ) {
+    return translateBatches
+      .computeIfAbsent(
+        language,
+        l -> new Batch<>("translate", l, translate)
+      )
+      .add(slotContext);
+  }
+
+  public synchronized CompletableFuture<RescoringAlternative> rescore(
+    Language language,
+    SlotContext slotContext
+  ) {
+    return rescoreBatches
+      .computeIfAbsent(
+        language,
+        l -> new Batch<>("rescore", l, rescore)
+      )
+      .add(slotContext);
+  }
+}
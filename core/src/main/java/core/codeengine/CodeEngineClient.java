@@ -9,6 +9,8 @@ import codeengine.gen.rpc.TranslationOutput;
 import codeengine.gen.rpc.TranslationRequest;
 import codeengine.gen.rpc.TranslationResponse;
 import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.Resources;
 import core.gen.rpc.Language;
 import java.io.IOException;
@@ -20,6 +22,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -46,6 +49,34 @@ public class CodeEngineClient {
     }
   }
 
+  // Slots in the same source object at the same offset share prior context. Comparing by identity
+  // avoids hashing the whole source for every slot.
+  private static class SlotPosition {
+
+    public final String source;
+    public final int slotStart;
+
+    public SlotPosition(SlotContext slotContext) {
+      this.source = slotContext.source;
+      this.slotStart = slotContext.slotStart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == null || !(o instanceof SlotPosition)) {
+        return false;
+      }
+
+      SlotPosition position = (SlotPosition) o;
+      return position.source == source && position.slotStart == slotStart;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(source) + slotStart;
+    }
+  }
+
   // Truncate at ~1%. Could technically happen in reranker, but be a decent sized change.
   private final double alternativeThreshold = -4.5;
   private Logger logger = LoggerFactory.getLogger(CodeEngineClient.class);
@@ -58,6 +89,17 @@ public class CodeEngineClient {
   private Tokenizer tokenizer;
   private Map<Model, Map<Language, UnknownReplacer>> unknownReplacers = new HashMap<>();
   private UnknownReplacer emptyReplacer = new UnknownReplacer(new HashSet<>());
+  private Cache<List<Object>, TranslationOutput> translationOutputs = CacheBuilder
+    .newBuilder()
+    .maximumSize(10000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+  private Cache<String, List<TranslationAlternative>> transcriptParserResults = CacheBuilder
+    .newBuilder()
+    .maximumSize(10000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .recordStats()
+    .build();
 
   @Inject
   public CodeEngineClient(
@@ -123,20 +165,26 @@ public class CodeEngineClient {
     }
   }
 
-  private Map<String, SlotParse> slotParses(
+  private Map<SlotPosition, SlotParse> slotParses(
     List<SlotContext> slotContexts,
     boolean includeAlphaNumeric
   ) {
-    Map<String, SlotParse> result = new HashMap<>();
+    int contextSize = includeAlphaNumeric
+      ? inputConverter.priorContextSize(maxPriorContextSize)
+      : maxPriorContextSize;
+
+    Map<SlotPosition, SlotParse> result = new HashMap<>();
     for (SlotContext slotContext : slotContexts) {
-      String prefix = slotPrefix(slotContext);
-      if (!result.containsKey(prefix)) {
+      SlotPosition position = new SlotPosition(slotContext);
+      if (!result.containsKey(position)) {
         List<Tokenizer.Token> priorContext = tokenizer.tokenizeSourcePrefix(
-          slotContext.source.substring(0, slotContext.slotStart)
+          slotContext.source,
+          slotContext.slotStart,
+          contextSize
         );
 
         result.put(
-          prefix,
+          position,
           new SlotParse(
             priorContext,
             includeAlphaNumeric
@@ -150,14 +198,60 @@ public class CodeEngineClient {
     return result;
   }
 
-  private String slotPrefix(SlotContext slotContext) {
-    return slotContext.source.substring(0, slotContext.slotStart);
-  }
-
   private UnknownReplacer unknownReplacer(Model model, Language language) {
     return unknownReplacers.getOrDefault(model, Map.of(language, emptyReplacer)).get(language);
   }
 
+  /**
+   * Translates model input sentences, only sending those without a cached output. Unknowns are
+   * assigned consistently, so the same command in the same context has the same model input.
+   */
+  private CompletableFuture<List<TranslationOutput>> translateWithCache(
+    Model model,
+    Language language,
+    List<String> sentences
+  ) {
+    Map<String, TranslationOutput> outputs = new HashMap<>();
+    List<String> misses = new ArrayList<>();
+    for (String sentence : sentences) {
+      TranslationOutput cached = translationOutputs.getIfPresent(
+        List.of(model, language, sentence)
+      );
+      if (cached != null) {
+        outputs.put(sentence, cached);
+      } else if (!misses.contains(sentence)) {
+        misses.add(sentence);
+      }
+    }
+
+    CompletableFuture<List<TranslationOutput>> response = misses.isEmpty()
+      ? CompletableFuture.completedFuture(Collections.emptyList())
+      : serviceHttpClient
+        .post(
+          ServiceHttpClient.Service.CodeEngine,
+          "/api/translate",
+          TranslationRequest
+            .newBuilder()
+            .setModel(model)
+            .setLanguage(language)
+            .addAllInputSentence(misses)
+            .build(),
+          TranslationResponse.parser()
+        )
+        .thenApply(r -> r.getOutputList());
+
+    return response.thenApply(
+      missOutputs -> {
+        for (int i = 0; i < misses.size(); i++) {
+          outputs.put(misses.get(i), missOutputs.get(i));
+          translationOutputs.put(List.of(model, language, misses.get(i)), missOutputs.get(i));
+        }
+
+        return sentences.stream().map(e -> outputs.get(e)).collect(Collectors.toList());
+      }
+    );
+  }
+
   public CompletableFuture<List<List<TranslationAlternative>>> translate(
     Language language,
     List<SlotContext> slotContexts
@@ -171,10 +265,10 @@ public class CodeEngineClient {
           return CompletableFuture.completedFuture(Collections.emptyList());
         }
 
-        Map<String, SlotParse> slotParses = slotParses(slotContexts, true);
+        Map<SlotPosition, SlotParse> slotParses = slotParses(slotContexts, true);
         List<UnknownReplacer.StringsWithUnknowns> inputs = new ArrayList<>();
         for (SlotContext slotContext : slotContexts) {
-          SlotParse slotParse = slotParses.get(slotPrefix(slotContext));
+          SlotParse slotParse = slotParses.get(new SlotPosition(slotContext));
           List<String> words = Arrays.asList(slotContext.english.split(" "));
           inputs.add(
             unknownReplacer(Model.MODEL_AUTO_STYLE, language)
@@ -195,25 +289,17 @@ public class CodeEngineClient {
           );
         }
 
-        CompletableFuture<TranslationResponse> response = serviceHttpClient.post(
-          ServiceHttpClient.Service.CodeEngine,
-          "/api/translate",
-          TranslationRequest
-            .newBuilder()
-            .setModel(Model.MODEL_AUTO_STYLE)
-            .setLanguage(language)
-            .addAllInputSentence(
-              inputs.stream().map(s -> s.strings.get(0)).collect(Collectors.toList())
-            )
-            .build(),
-          TranslationResponse.parser()
+        CompletableFuture<List<TranslationOutput>> response = translateWithCache(
+          Model.MODEL_AUTO_STYLE,
+          language,
+          inputs.stream().map(s -> s.strings.get(0)).collect(Collectors.toList())
         );
 
         CompletableFuture<List<List<TranslationAlternative>>> result = response.thenApply(
-          innerResponse -> {
+          outputs -> {
             List<List<TranslationAlternative>> innerResult = new ArrayList<>();
             for (int i = 0; i < inputs.size(); i++) {
-              TranslationOutput output = innerResponse.getOutput(i);
+              TranslationOutput output = outputs.get(i);
               List<TranslationAlternative> currentResults = new ArrayList<>();
               for (TranslationAlternative alternative : output.getAlternativeList()) {
                 if (
@@ -266,9 +352,9 @@ public class CodeEngineClient {
           .setModel(Model.MODEL_CONTEXTUAL_LANGUAGE_MODEL)
           .setLanguage(language);
 
-        Map<String, SlotParse> slotParses = slotParses(slotContexts, false);
+        Map<SlotPosition, SlotParse> slotParses = slotParses(slotContexts, false);
         for (SlotContext slotContext : slotContexts) {
-          SlotParse slotParse = slotParses.get(slotPrefix(slotContext));
+          SlotParse slotParse = slotParses.get(new SlotPosition(slotContext));
           String inputSentence = inputConverter
             .convert(
               slotParse.priorContext,
@@ -313,8 +399,60 @@ public class CodeEngineClient {
     );
   }
 
-  public List<List<TranslationAlternative>> transcriptParserTranslate(List<String> transcripts) {
-    return Logs.logTime(
+  /** The hit rate of the transcript parser cache, for monitoring. */
+  public double transcriptParserCacheHitRate() {
+    return transcriptParserResults.stats().hitRate();
+  }
+
+  public CompletableFuture<List<List<TranslationAlternative>>> transcriptParserTranslate(
+    List<String> transcripts
+  ) {
+    // partial endpoints share most of their alternatives with the previous one, so only send the
+    // transcripts we haven't seen recently to the model.
+    Map<String, List<TranslationAlternative>> results = new HashMap<>();
+    List<String> misses = new ArrayList<>();
+    for (String transcript : transcripts) {
+      List<TranslationAlternative> cached = transcriptParserResults.getIfPresent(transcript);
+      if (cached != null) {
+        results.put(transcript, cached);
+      } else if (!misses.contains(transcript)) {
+        misses.add(transcript);
+      }
+    }
+
+    Logs.logData(
+      logger,
+      "core.transcript-parser-cache",
+      Map.of(
+        "hits",
+        transcripts.size() - misses.size(),
+        "misses",
+        misses.size(),
+        "hitRate",
+        transcriptParserCacheHitRate()
+      )
+    );
+
+    CompletableFuture<List<List<TranslationAlternative>>> response = misses.isEmpty()
+      ? CompletableFuture.completedFuture(Collections.emptyList())
+      : transcriptParserTranslateUncached(misses);
+
+    return response.thenApply(
+      missResults -> {
+        for (int i = 0; i < misses.size(); i++) {
+          results.put(misses.get(i), missResults.get(i));
+          transcriptParserResults.put(misses.get(i), missResults.get(i));
+        }
+
+        return transcripts.stream().map(t -> results.get(t)).collect(Collectors.toList());
+      }
+    );
+  }
+
+  private CompletableFuture<List<List<TranslationAlternative>>> transcriptParserTranslateUncached(
+    List<String> transcripts
+  ) {
+    return Logs.logTimeAsync(
       logger,
       "core.code-engine-translate-transcript-parser",
       Map.of(),
@@ -334,7 +472,7 @@ public class CodeEngineClient {
           .map(s -> s.strings.get(0))
           .collect(Collectors.toList());
 
-        TranslationResponse response = serviceHttpClient.postBlocking(
+        CompletableFuture<TranslationResponse> response = serviceHttpClient.post(
           ServiceHttpClient.Service.CodeEngine,
           "/api/translate",
           TranslationRequest
@@ -346,28 +484,32 @@ public class CodeEngineClient {
           TranslationResponse.parser()
         );
 
-        List<List<TranslationAlternative>> result = new ArrayList<>();
-        for (int i = 0; i < inputs.size(); i++) {
-          TranslationOutput output = response.getOutput(i);
-          List<TranslationAlternative> currentResults = new ArrayList<>();
-          for (TranslationAlternative alternative : output.getAlternativeList()) {
-            currentResults.add(
-              TranslationAlternative
-                .newBuilder()
-                .setSentence(
-                  unknownReplacer(Model.MODEL_TRANSCRIPT_PARSER, Language.LANGUAGE_DEFAULT)
-                    .resolveUnknowns(alternative.getSentence(), inputs.get(i).unknowns)
-                    .strip()
-                )
-                .setScore(alternative.getScore())
-                .build()
-            );
-          }
+        return response.thenApply(
+          innerResponse -> {
+            List<List<TranslationAlternative>> result = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+              TranslationOutput output = innerResponse.getOutput(i);
+              List<TranslationAlternative> currentResults = new ArrayList<>();
+              for (TranslationAlternative alternative : output.getAlternativeList()) {
+                currentResults.add(
+                  TranslationAlternative
+                    .newBuilder()
+                    .setSentence(
+                      unknownReplacer
+                        .resolveUnknowns(alternative.getSentence(), inputs.get(i).unknowns)
+                        .strip()
+                    )
+                    .setScore(alternative.getScore())
+                    .build()
+                );
+              }
 
-          result.add(currentResults);
-        }
+              result.add(currentResults);
+            }
 
-        return result;
+            return result;
+          }
+        );
       }
     );
   }
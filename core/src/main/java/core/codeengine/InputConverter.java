@@ -66,6 +66,11 @@ public class InputConverter {
     return Math.max(0, priorContext.size() - maxContextSize);
   }
 
+  /** The number of tokens of prior context used for both the model input and alphanumerics. */
+  public int priorContextSize(int maxContextSize) {
+    return maxContextSize + maxContextForAlphaSubsequences;
+  }
+
   public Map<List<Tokenizer.Token>, List<String>> alphaNumerics(
     List<Tokenizer.Token> priorContext,
     int maxContextSize
@@ -210,14 +210,9 @@ public class Tokenizer {
     }
   }
 
-  Pattern capsPascal = Pattern.compile("^([A-Z]+)[A-Z][a-z]");
-  Pattern caps = Pattern.compile("^[A-Z]+");
-  Pattern capital;
+  protected Pattern capital;
   Pattern indentationPattern = Pattern.compile("^\\s*");
-  Pattern lowerCase;
-  Pattern number = Pattern.compile("^[0-9]+");
-  Pattern spaces = Pattern.compile("^\\s+");
-  Pattern symbol = Pattern.compile("^[^A-Za-z0-9]");
+  protected Pattern lowerCase;
   Contractions contractions;
   Escaper escaper;
   Resolver resolver;
@@ -254,10 +249,13 @@ public class Tokenizer {
 
   public List<Token> tokenize(String source) {
     source.replaceAll("\t", "    ");
-    String[] lines = source.split("\n", -1);
-    String previousIndentation = "";
+    return tokenize(source, 0, source.length(), "");
+  }
+
+  private List<Token> tokenize(String source, int start, int stop, String previousIndentation) {
+    String[] lines = source.substring(start, stop).split("\n", -1);
     List<Token> tokens = new ArrayList<>();
-    int position = 0;
+    int position = start;
     for (int i = 0; i < lines.length; i++) {
       // don't strip last line so that we can complete it.
       if (i != lines.length - 1 && lines[i].trim().equals("")) {
@@ -284,52 +282,143 @@ public class Tokenizer {
     return tokens;
   }
 
+  // The indentation of the last non-blank line ending before the given line start.
+  private String indentationBefore(String source, int lineStart) {
+    int stop = lineStart - 1;
+    while (stop >= 0) {
+      int start = source.lastIndexOf('\n', stop - 1) + 1;
+      String line = source.substring(start, stop);
+      if (!line.trim().equals("")) {
+        Matcher m = indentationPattern.matcher(line);
+        m.find();
+        return m.group(0);
+      }
+      stop = start - 1;
+    }
+    return "";
+  }
+
   public List<Token> tokenizeSourcePrefix(String source) {
     return tokenize(source);
   }
 
-  private List<Token> tokenizeLine(String source, int position, String line, boolean lastLine) {
+  /**
+   * Tokenizes only as many lines before stop as needed to find minTokens tokens. The result is
+   * the same as the end of tokenizeSourcePrefix(source.substring(0, stop)), so callers that only
+   * need recent context don't have to tokenize the whole file.
+   */
+  public List<Token> tokenizeSourcePrefix(String source, int stop, int minTokens) {
+    int lines = 64;
+    while (true) {
+      int newline = stop;
+      for (int i = 0; i < lines && newline >= 0; i++) {
+        newline = source.lastIndexOf('\n', newline - 1);
+      }
+
+      int start = newline + 1;
+      List<Token> result = tokenize(source, start, stop, indentationBefore(source, start));
+      if (start == 0 || result.size() >= minTokens) {
+        return result;
+      }
+      lines *= 2;
+    }
+  }
+
+  private boolean isLower(char c) {
+    return c >= 'a' && c <= 'z';
+  }
+
+  private boolean isUpper(char c) {
+    return c >= 'A' && c <= 'Z';
+  }
+
+  private boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  // Same characters as \s, other than newlines, which are handled by the caller.
+  private boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  // Length of the alpha token at start, where the character at start is a letter.
+  private int alphaLength(Matcher contraction, String source, int start, int stop) {
+    int lowers = start + 1;
+    while (lowers < stop && isLower(source.charAt(lowers))) {
+      lowers++;
+    }
+
+    // Every contraction is a run of letters followed by an apostrophe, so only then do we need to
+    // check for one.
+    boolean apostrophe = lowers < stop && source.charAt(lowers) == '\'';
+    if (isLower(source.charAt(start))) {
+      if (apostrophe && contraction.usePattern(lowerCase).region(start, stop).lookingAt()) {
+        return contraction.end() - start;
+      }
+
+      return lowers - start;
+    }
+
+    if (apostrophe && contraction.usePattern(capital).region(start, stop).lookingAt()) {
+      return contraction.end() - start;
+    } else if (lowers - start > 1) {
+      return lowers - start;
+    }
+
+    int uppers = start + 1;
+    while (uppers < stop && isUpper(source.charAt(uppers))) {
+      uppers++;
+    }
+
+    // For something like HTTPServer, the last capital starts the next token.
+    if (uppers - start > 1 && uppers < stop && isLower(source.charAt(uppers))) {
+      return uppers - start - 1;
+    }
+
+    return uppers - start;
+  }
+
+  protected List<Token> tokenizeLine(String source, int position, String line, boolean lastLine) {
     List<Token> ret = new ArrayList<Token>();
-    String remaining = line;
     int lineStart = position;
-    while (remaining.length() > 0) {
-      Matcher m;
-      int consumed = 0;
-      if ((m = spaces.matcher(remaining)).find()) {
-        consumed = m.group(0).length();
+    int stop = position + line.length();
+    Matcher contraction = lowerCase.matcher(source);
+    while (position < stop) {
+      char c = source.charAt(position);
+      int consumed = 1;
+      if (isSpace(c)) {
+        while (position + consumed < stop && isSpace(source.charAt(position + consumed))) {
+          consumed++;
+        }
+
         // Strip leading/trailing whitespace (indentation handled elsewhere).
         // Don't strip trailing if it's the last line, so that during inference time
         // we can predict after a space before the cursor.
-        if (position != lineStart && (lastLine || consumed != remaining.length())) {
+        if (position != lineStart && (lastLine || position + consumed != stop)) {
           for (int i = 0; i < consumed; i++) {
             ret.add(new SpaceToken(source, new Range(position + i, position + i + 1)));
           }
         }
-      } else if ((m = symbol.matcher(remaining)).find()) {
-        consumed = m.group(0).length();
-        ret.add(new SymbolToken(source, new Range(position, position + consumed)));
-      } else if ((m = number.matcher(remaining)).find()) {
-        consumed = m.group(0).length();
-        ret.add(new NumberToken(source, new Range(position, position + consumed)));
-      } else {
-        AlphaStyle style;
-        if ((m = lowerCase.matcher(remaining)).find()) {
-          style = AlphaStyle.LOWERCASE;
-          consumed = m.group(0).length();
-        } else if ((m = capital.matcher(remaining)).find()) {
-          style = AlphaStyle.CAPITAL;
-          consumed = m.group(0).length();
-        } else if ((m = capsPascal.matcher(remaining)).find()) {
-          style = AlphaStyle.CAPS;
-          consumed = m.group(1).length();
-        } else {
-          (m = caps.matcher(remaining)).find();
-          style = AlphaStyle.CAPS;
-          consumed = m.group(0).length();
+      } else if (isDigit(c)) {
+        while (position + consumed < stop && isDigit(source.charAt(position + consumed))) {
+          consumed++;
         }
+
+        ret.add(new NumberToken(source, new Range(position, position + consumed)));
+      } else if (isLower(c) || isUpper(c)) {
+        consumed = alphaLength(contraction, source, position, stop);
+        AlphaStyle style = isLower(c)
+          ? AlphaStyle.LOWERCASE
+          : consumed > 1 && isLower(source.charAt(position + consumed - 1))
+            ? AlphaStyle.CAPITAL
+            : AlphaStyle.CAPS;
         ret.add(new AlphaToken(source, new Range(position, position + consumed), style));
+      } else {
+        // symbols are single code points, which can be two chars, like emoji.
+        consumed = Math.min(Character.charCount(source.codePointAt(position)), stop - position);
+        ret.add(new SymbolToken(source, new Range(position, position + consumed)));
       }
-      remaining = remaining.substring(consumed);
+
       position += consumed;
     }
     return ret;
@@ -6,6 +6,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -51,11 +52,22 @@ public class UnknownReplacer {
       .collect(Collectors.toList());
   }
 
+  private List<String> unknownsInOrder(List<String> strings) {
+    return strings
+      .stream()
+      .flatMap(sentence -> Arrays.stream(sentence.split(" ")))
+      .filter(s -> !lexicon.contains(s))
+      .distinct()
+      .collect(Collectors.toList());
+  }
+
   public StringsWithUnknowns stringsWithUnknowns(List<String> strings) {
     List<String> replacedStrings = new ArrayList<>();
     List<Integer> unknownIds = IntStream.range(0, maxUnknowns).boxed().collect(Collectors.toList());
     if (!deterministic) {
-      Collections.shuffle(unknownIds);
+      // the model is trained on randomly assigned ids, but the same input should always get the
+      // same ids so that model outputs can be cached, so seed the shuffle with the unknowns.
+      Collections.shuffle(unknownIds, new Random(unknownsInOrder(strings).hashCode()));
     }
     int nextUnknownIdIndex = 0;
     Map<String, Integer> unknowns = new HashMap<>();
@@ -43,13 +43,13 @@ public class HtmlCommands extends Commands {
     AstParent root = astFactory.createFileRoot(source, language());
 
     Optional<Ast.MarkupElement> scriptRoot = root
-      .find(Ast.MarkupElement.class)
-      .filter(e -> e.nameString().equals("script") && e.range().contains(cursor))
+      .find(Ast.MarkupElement.class, new Range(cursor))
+      .filter(e -> e.nameString().equals("script"))
       .findFirst();
 
     Optional<Ast.MarkupElement> styleRoot = root
-      .find(Ast.MarkupElement.class)
-      .filter(e -> e.nameString().equals("style") && e.range().contains(cursor))
+      .find(Ast.MarkupElement.class, new Range(cursor))
+      .filter(e -> e.nameString().equals("style"))
       .findFirst();
 
     if (scriptRoot.isPresent()) {
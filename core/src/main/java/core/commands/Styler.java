@@ -1,7 +1,7 @@
 package core.commands;
 
+import core.ast.AstFactory;
 import core.closeness.ClosestObjectFinder;
-import core.exception.CannotStyleInvalidFile;
 import core.exception.InvalidStyler;
 import core.formattedtext.ConversionMapFactory;
 import core.gen.rpc.Language;
@@ -10,15 +10,9 @@ import core.util.Comments;
 import core.util.Diff;
 import core.util.Range;
 import core.util.Whitespace;
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import toolbelt.env.Env;
@@ -26,6 +20,9 @@ import toolbelt.languages.LanguageDeterminer;
 
 public class Styler {
 
+  @Inject
+  AstFactory astFactory;
+
   @Inject
   ClosestObjectFinder closestObjectFinder;
 
@@ -38,6 +35,9 @@ public class Styler {
   @Inject
   ConversionMapFactory conversionMapFactory;
 
+  @Inject
+  StylerPool stylerPool;
+
   @Inject
   Whitespace whitespace;
 
@@ -78,37 +78,11 @@ public class Styler {
   }
 
   private String executeStyler(String source, Language language, StylerType styler) {
-    try {
-      if (styler == null || styler == StylerType.STYLER_TYPE_NONE) {
-        styler = getDefaultStyler(language);
-      }
-
-      Process process = getStylerProcess(source, language, styler).start();
-      OutputStream stdin = process.getOutputStream();
-      InputStream stdout = process.getInputStream();
-      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stdin));
-
-      // send code to stdin
-      writer.write(source);
-      writer.flush();
-      writer.close();
-
-      // read stdout
-      Scanner scanner = new Scanner(stdout);
-      scanner.useDelimiter("\\A");
-      if (scanner.hasNext()) {
-        source = scanner.next();
-      }
-
-      scanner.close();
-      if (process.waitFor() != 0) {
-        throw new CannotStyleInvalidFile();
-      }
-    } catch (InterruptedException | IOException e) {
-      throw new RuntimeException("Styler error", e);
+    if (styler == null || styler == StylerType.STYLER_TYPE_NONE) {
+      styler = getDefaultStyler(language);
     }
 
-    return source;
+    return stylerPool.style(styler, getStylerProcess(source, language, styler).command(), source);
   }
 
   private ProcessBuilder getStylerProcess(String source, Language language, StylerType styler) {
@@ -221,7 +195,7 @@ public class Styler {
 
   private int sourcePosition(String source, int nonWhitespacePosition, boolean start) {
     // Convert the non-whitespace index back to a regular position in the styled source.
-    List<Range> ranges = whitespace.nonWhitespaceRanges(source);
+    List<Range> ranges = astFactory.sourceIndex(source).nonWhitespaceRanges();
     int rangeNonWhitespacePosition = 0;
     Range range = new Range(0, 0);
     for (int i = 0; i < ranges.size(); i++) {
@@ -253,7 +227,7 @@ public class Styler {
     // whitespace. Since styling mostly just changes whitespace, we'll use this below to
     // recover our cursor position. We do this without a parser/lexer because it's
     // faster/generalized, respectively.
-    List<Range> ranges = whitespace.nonWhitespaceRanges(source);
+    List<Range> ranges = astFactory.sourceIndex(source).nonWhitespaceRanges();
     if (ranges.size() == 0) {
       return diff.replaceSource(styledSource);
     }
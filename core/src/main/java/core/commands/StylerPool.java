@@ -0,0 +1,370 @@
+package core.commands;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import core.exception.CannotStyleInvalidFile;
+import core.exception.TimeoutExceeded;
+import core.gen.rpc.StylerType;
+import core.util.SourceHasher;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import toolbelt.logging.Logs;
+
+/**
+ * Runs formatters for the Styler. google-java-format is run in-process through the command-line
+ * entry point of the jar we ship, so its output (including removed and sorted imports) matches
+ * running that jar, which we fall back to if it can't be linked. None of the other formatters can
+ * be kept running across inputs, so instead we keep a process started ahead of time for the last
+ * command run by each styler type. It's blocked reading stdin, so startup happens while idle rather
+ * than while a user waits. Each styler type has a bounded number of concurrent runs, every run has
+ * a timeout, and results are cached by the hash of their input.
+ */
+@Singleton
+public class StylerPool {
+
+  private class JavaFormatter {
+
+    public final Constructor<?> main;
+    public final Method format;
+
+    public JavaFormatter(Constructor<?> main, Method format) {
+      this.main = main;
+      this.format = format;
+    }
+  }
+
+  // the jar is self-contained, so it only sees the platform classes and the javac internals it
+  // needs, rather than (possibly different) versions of its dependencies on our classpath.
+  private static class JavaFormatterClassLoader extends URLClassLoader {
+
+    public JavaFormatterClassLoader(URL jar) {
+      super(new URL[] { jar }, ClassLoader.getPlatformClassLoader());
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.startsWith("com.sun.source.") || name.startsWith("com.sun.tools.javac.")) {
+        return ClassLoader.getSystemClassLoader().loadClass(name);
+      }
+
+      return super.loadClass(name, resolve);
+    }
+  }
+
+  private class WarmProcess {
+
+    public final List<String> command;
+    public final Process process;
+
+    public WarmProcess(List<String> command, Process process) {
+      this.command = command;
+      this.process = process;
+    }
+  }
+
+  private final int maxProcessesPerStyler = 4;
+  private final int maxWarmProcesses = 4;
+  private final int idleMinutes = 5;
+  private final int timeoutSeconds = 10;
+
+  private Logger logger = LoggerFactory.getLogger(StylerPool.class);
+  private ExecutorService executor = Executors.newCachedThreadPool();
+  // a timed out format can't be interrupted, so it keeps its thread and its slot until it's done.
+  private ExecutorService javaFormatExecutor = Executors.newFixedThreadPool(
+    maxProcessesPerStyler,
+    new ThreadFactoryBuilder().setDaemon(true).build()
+  );
+  private ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(
+    new ThreadFactoryBuilder().setDaemon(true).build()
+  );
+  private Map<StylerType, Semaphore> slots = new ConcurrentHashMap<>();
+  private Map<String, Optional<JavaFormatter>> javaFormatters = new ConcurrentHashMap<>();
+  // processes taken for a run are removed explicitly, so anything else removed is destroyed.
+  private Cache<StylerType, WarmProcess> warmProcesses = CacheBuilder
+    .newBuilder()
+    .maximumSize(maxWarmProcesses)
+    .expireAfterWrite(idleMinutes, TimeUnit.MINUTES)
+    .removalListener(
+      (RemovalNotification<StylerType, WarmProcess> removed) -> {
+        if (removed.getCause() != RemovalCause.EXPLICIT) {
+          removed.getValue().process.destroy();
+        }
+      }
+    )
+    .build();
+  private Cache<List<String>, String> styledSources = CacheBuilder
+    .newBuilder()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
+  @Inject
+  SourceHasher sourceHasher;
+
+  @Inject
+  public StylerPool() {
+    // the cache only expires entries when it's used, so reap idle processes on a timer too.
+    reaper.scheduleAtFixedRate(() -> warmProcesses.cleanUp(), 1, 1, TimeUnit.MINUTES);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::destroyWarmProcesses));
+  }
+
+  private void destroyWarmProcesses() {
+    for (WarmProcess warm : warmProcesses.asMap().values()) {
+      warm.process.destroy();
+    }
+  }
+
+  private Optional<String> jar(List<String> command) {
+    return command.stream().filter(e -> e.endsWith(".jar")).findFirst();
+  }
+
+  private Optional<JavaFormatter> javaFormatter(List<String> command) {
+    Optional<String> jar = jar(command);
+    if (jar.isEmpty() || !new File(jar.get()).exists()) {
+      return Optional.empty();
+    }
+
+    return javaFormatters.computeIfAbsent(
+      jar.get(),
+      path -> {
+        try {
+          ClassLoader loader = new JavaFormatterClassLoader(new File(path).toURI().toURL());
+          Class<?> mainClass = loader.loadClass("com.google.googlejavaformat.java.Main");
+          return Optional.of(
+            new JavaFormatter(
+              mainClass.getConstructor(PrintWriter.class, PrintWriter.class, InputStream.class),
+              mainClass.getMethod("format", String[].class)
+            )
+          );
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+          Logs.logError(logger, "Styler load error", e);
+          return Optional.empty();
+        }
+      }
+    );
+  }
+
+  // always releases the slot, since the format can outlive its timeout. returns empty if the
+  // formatter couldn't be loaded or linked, in which case the jar should be run instead.
+  Optional<String> formatJava(List<String> command, String source, Semaphore semaphore) {
+    Optional<JavaFormatter> formatter = javaFormatter(command);
+    if (formatter.isEmpty()) {
+      semaphore.release();
+      return Optional.empty();
+    }
+
+    // the jar's arguments are everything after it in the command.
+    String[] arguments = command
+      .subList(command.indexOf(jar(command).get()) + 1, command.size())
+      .toArray(new String[0]);
+
+    Future<Optional<String>> output = javaFormatExecutor.submit(
+      () -> {
+        try {
+          StringWriter out = new StringWriter();
+          Object main = formatter
+            .get()
+            .main.newInstance(
+              new PrintWriter(out, true),
+              new PrintWriter(new StringWriter(), true),
+              new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8))
+            );
+          int exitValue = (int) formatter.get().format.invoke(main, (Object) arguments);
+          if (exitValue != 0) {
+            throw new CannotStyleInvalidFile();
+          }
+
+          return Optional.of(out.toString());
+        } catch (InvocationTargetException e) {
+          if (!(e.getCause() instanceof LinkageError)) {
+            throw new RuntimeException("Styler error", e.getCause());
+          }
+
+          unlink(command, e.getCause());
+          return Optional.empty();
+        } catch (LinkageError e) {
+          unlink(command, e);
+          return Optional.empty();
+        } finally {
+          semaphore.release();
+        }
+      }
+    );
+
+    try {
+      return output.get(timeoutSeconds, TimeUnit.SECONDS);
+    } catch (TimeoutException e) {
+      // interrupting doesn't stop the formatter, and a cancelled task would never release its slot.
+      throw new TimeoutExceeded();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw new RuntimeException("Styler error", e);
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Styler error", e);
+    }
+  }
+
+  // e.g., newer jars need javac internals that the JDK doesn't export to us, which only fails once
+  // the formatter is used. don't try the jar in-process again.
+  private void unlink(List<String> command, Throwable error) {
+    Logs.logError(logger, "Styler link error", error);
+    javaFormatters.put(jar(command).get(), Optional.empty());
+  }
+
+  private String run(StylerType styler, List<String> command, String source) {
+    Process process = take(styler, command);
+    Future<String> output = executor.submit(
+      () -> {
+        // send code to stdin
+        BufferedWriter writer = new BufferedWriter(
+          new OutputStreamWriter(process.getOutputStream())
+        );
+        writer.write(source);
+        writer.flush();
+        writer.close();
+
+        // read stdout
+        String result = source;
+        Scanner scanner = new Scanner(process.getInputStream());
+        scanner.useDelimiter("\\A");
+        if (scanner.hasNext()) {
+          result = scanner.next();
+        }
+
+        scanner.close();
+        return result;
+      }
+    );
+
+    try {
+      String result = output.get(timeoutSeconds, TimeUnit.SECONDS);
+      if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+        throw new TimeoutException();
+      }
+
+      if (process.exitValue() != 0) {
+        throw new CannotStyleInvalidFile();
+      }
+
+      // only replace processes for commands that work, so a missing formatter isn't restarted.
+      executor.submit(() -> warm(styler, command));
+      return result;
+    } catch (TimeoutException e) {
+      output.cancel(true);
+      process.destroyForcibly();
+      throw new TimeoutExceeded();
+    } catch (InterruptedException | ExecutionException e) {
+      process.destroyForcibly();
+      throw new RuntimeException("Styler error", e);
+    }
+  }
+
+  private Process take(StylerType styler, List<String> command) {
+    WarmProcess warm = warmProcesses.asMap().remove(styler);
+    if (warm != null) {
+      if (warm.command.equals(command) && warm.process.isAlive()) {
+        return warm.process;
+      }
+
+      warm.process.destroy();
+    }
+
+    try {
+      return new ProcessBuilder(command).start();
+    } catch (IOException e) {
+      throw new RuntimeException("Styler error", e);
+    }
+  }
+
+  private void warm(StylerType styler, List<String> command) {
+    WarmProcess existing = warmProcesses.getIfPresent(styler);
+    if (existing != null && existing.command.equals(command) && existing.process.isAlive()) {
+      return;
+    }
+
+    // replacing the process for a different command destroys it in the removal listener.
+    try {
+      warmProcesses.put(styler, new WarmProcess(command, new ProcessBuilder(command).start()));
+    } catch (IOException e) {
+      Logs.logError(logger, "Styler warm error", e);
+    }
+  }
+
+  private void acquire(Semaphore semaphore) {
+    try {
+      if (!semaphore.tryAcquire(timeoutSeconds, TimeUnit.SECONDS)) {
+        throw new TimeoutExceeded();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Styler error", e);
+    }
+  }
+
+  public String style(StylerType styler, List<String> command, String source) {
+    List<String> key = new ArrayList<>(command);
+    key.add(sourceHasher.hash(source));
+    String cached = styledSources.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    Semaphore semaphore = slots.computeIfAbsent(
+      styler,
+      s -> new Semaphore(maxProcessesPerStyler)
+    );
+    acquire(semaphore);
+    if (styler == StylerType.STYLER_TYPE_GOOGLE_JAVA_FORMAT) {
+      Optional<String> result = formatJava(command, source, semaphore);
+      if (result.isPresent()) {
+        styledSources.put(key, result.get());
+        return result.get();
+      }
+
+      acquire(semaphore);
+    }
+
+    try {
+      String result = run(styler, command, source);
+      styledSources.put(key, result);
+      return result;
+    } finally {
+      semaphore.release();
+    }
+  }
+}
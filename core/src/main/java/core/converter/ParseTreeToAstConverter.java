@@ -405,7 +405,7 @@ public abstract class ParseTreeToAstConverter implements LanguageSpecific {
   }
 
   protected <T extends AstToken> T createToken(T token, String source, Range range) {
-    token.range = range;
+    token.setRange(range);
     token.setCode(source.substring(range.start, range.stop));
     return token;
   }
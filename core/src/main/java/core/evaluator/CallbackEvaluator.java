@@ -188,7 +188,7 @@ public class CallbackEvaluator {
           CommandsResponse
             .newBuilder(
               transcriptEvaluator.evaluate(
-                transcriptParser.parse(
+                transcriptParser.parseBlocking(
                   Arrays.asList(Alternative.newBuilder().setTranscript(request.getText()).build()),
                   state,
                   true
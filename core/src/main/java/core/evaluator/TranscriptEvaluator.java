@@ -1,5 +1,8 @@
 package core.evaluator;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
 import core.ast.AstFactory;
 import core.ast.api.AstParent;
 import core.codeengine.CodeEngineBatchQueue;
@@ -35,6 +38,8 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -105,6 +110,20 @@ public class TranscriptEvaluator {
 
   private final int maxAlternatives = 10;
 
+  // Alternatives are independent until they're deduplicated, so the CPU-bound part of evaluating
+  // each one (parsing, selectors, snippets) runs in parallel.
+  private ForkJoinPool evaluationPool = new ForkJoinPool(
+    Runtime.getRuntime().availableProcessors()
+  );
+
+  // Alternatives evaluated for each parse and editor state, so a final endpoint can reuse the
+  // work done for the partial ones before it.
+  Cache<List<Object>, List<CommandsResponseAlternativeWithMetadata>> evaluations = CacheBuilder
+    .newBuilder()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
   @Inject
   AstFactory astFactory;
 
@@ -177,22 +196,35 @@ public class TranscriptEvaluator {
     return ret;
   }
 
-  private List<CommandsResponseAlternativeWithMetadata> evaluateTranscripts(
+  List<CommandsResponseAlternativeWithMetadata> evaluateTranscripts(
     List<ParsedTranscript> parsed,
     EditorStateWithMetadata state
   ) {
     Language language = state.getLanguage();
     CodeEngineBatchQueue queue = codeEngineBatchQueueFactory.create(language);
 
-    List<CompletableFuture<List<CommandsResponseAlternativeWithMetadata>>> resolved = parsed
+    HashCode fingerprint = state.fingerprint();
+    List<CompletableFuture<CompletableFuture<List<CommandsResponseAlternativeWithMetadata>>>> started = parsed
       .stream()
-      .map(e -> evaluateTranscript(e, state, queue))
+      .map(e -> evaluateTranscriptWithCache(e, state, fingerprint, queue))
       .collect(Collectors.toList());
 
+    // flushing only waits for requests already made, so every alternative has to make its code
+    // engine requests first. the scheduler sends them as its batches fill or their windows close,
+    // not necessarily together.
+    try {
+      CompletableFuture.allOf(started.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+
     queue.flush();
-    List<CommandsResponseAlternativeWithMetadata> flattened = resolved
+    List<CommandsResponseAlternativeWithMetadata> flattened = started
       .stream()
-      .flatMap(e -> e.join().stream())
+      .flatMap(e -> e.join().join().stream())
       .collect(Collectors.toList());
 
     List<CommandsResponseAlternativeWithMetadata> result = new ArrayList<>();
@@ -213,6 +245,79 @@ public class TranscriptEvaluator {
     return result;
   }
 
+  /**
+   * Evaluates the transcript, reusing the alternatives from evaluating the same parse against the
+   * same editor state, so a final endpoint only evaluates what changed since the last partial one.
+   */
+  private CompletableFuture<CompletableFuture<List<CommandsResponseAlternativeWithMetadata>>> evaluateTranscriptWithCache(
+    ParsedTranscript parsed,
+    EditorStateWithMetadata state,
+    HashCode fingerprint,
+    CodeEngineBatchQueue queue
+  ) {
+    List<String> markup = parsed.root.toMarkup();
+    List<Object> key = List.of(
+      state.getSessionKey(),
+      fingerprint,
+      parsed.transcript(),
+      parsed.isValid,
+      markup
+    );
+
+    List<CommandsResponseAlternativeWithMetadata> cached = evaluations.getIfPresent(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(
+        CompletableFuture.completedFuture(
+          cached
+            .stream()
+            .map(
+              e -> {
+                CommandsResponseAlternativeWithMetadata result = new CommandsResponseAlternativeWithMetadata(
+                  e
+                );
+                result.parsed = parsed;
+                return result;
+              }
+            )
+            .collect(Collectors.toList())
+        )
+      );
+    }
+
+    return CompletableFuture.supplyAsync(
+      () ->
+        evaluateTranscript(parsed, state, queue)
+          .thenApply(
+            result -> {
+              // repeat depends on the command history, and invalid alternatives include timeouts
+              // and other errors that might not happen again.
+              if (
+                !markup.contains("<repeat>") &&
+                result
+                  .stream()
+                  .noneMatch(
+                    e ->
+                      e.commands.isEmpty() ||
+                      e.commands.get(0).getType() == CommandType.COMMAND_TYPE_INVALID
+                  )
+              ) {
+                // store copies, since the returned alternatives can be changed by reranking.
+                evaluations.put(
+                  key,
+                  result
+                    .stream()
+                    .map(CommandsResponseAlternativeWithMetadata::new)
+                    .collect(Collectors.toList())
+                );
+              }
+
+              return result;
+            }
+          ),
+      evaluationPool
+    );
+  }
+
   private CompletableFuture<List<CommandsResponseAlternativeWithMetadata>> evaluateTranscript(
     ParsedTranscript parsed,
     EditorStateWithMetadata state,
@@ -669,12 +774,29 @@ public class TranscriptEvaluator {
     );
   }
 
+  private void parseSessionSource(EditorStateWithMetadata state) {
+    if (state.getLanguage() == Language.LANGUAGE_DEFAULT) {
+      return;
+    }
+
+    // Parse incrementally from the last source in this session, so that commands creating a file
+    // root from the same source are cache hits. Any parse errors are raised by those commands.
+    try {
+      astFactory.createImmutableFileRoot(
+        state.getSessionKey(),
+        state.getSource(),
+        state.getLanguage()
+      );
+    } catch (RuntimeException e) {}
+  }
+
   public CommandsResponse evaluate(
     List<ParsedTranscript> parsed,
     EditorStateWithMetadata state,
     boolean finalize
   ) {
     NewlineNormalizer.Normalization normalization = newlineNormalizer.normalize(state);
+    parseSessionSource(normalization.state);
     List<CommandsResponseAlternative> alternatives = reranker
       .rerankEvaluated(evaluateTranscripts(parsed, normalization.state))
       .stream()
@@ -1,6 +1,8 @@
 package core.evaluator;
 
 import codeengine.gen.rpc.TranslationAlternative;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import core.codeengine.CodeEngineClient;
 import core.gen.antlr.command.CommandLexer;
 import core.gen.antlr.command.CommandParser;
@@ -17,6 +19,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -100,6 +108,21 @@ public class TranscriptParser {
 
   private final int maxParsed = 20;
   private final int maxValid = 10;
+  // bounded like the session evaluation pool, so a backlog of parses behind a slow parser model is
+  // rejected rather than growing without limit. daemon threads don't keep the jvm alive.
+  private ExecutorService executor = new ThreadPoolExecutor(
+    Runtime.getRuntime().availableProcessors(),
+    Runtime.getRuntime().availableProcessors(),
+    0L,
+    TimeUnit.MILLISECONDS,
+    new ArrayBlockingQueue<>(
+      Integer.parseInt(
+        Optional.ofNullable(System.getenv("TRANSCRIPT_PARSER_MAX_PENDING")).orElse("1000")
+      )
+    ),
+    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("transcript-parser-%d").build(),
+    new ThreadPoolExecutor.AbortPolicy()
+  );
 
   @Inject
   public TranscriptParser() {}
@@ -144,65 +167,71 @@ public class TranscriptParser {
     return reparseDictatePattern.matcher(transcript).matches();
   }
 
-  private List<ParsedTranscript> parseAndFilter(
+  private CompletableFuture<List<ParsedTranscript>> parseAndFilter(
     List<Alternative> alternatives,
-    EditorStateWithMetadata state
+    EditorStateWithMetadata state,
+    Executor executor
   ) {
     List<String> transcripts = alternatives
       .stream()
       .map(e -> e.getTranscript())
       .collect(Collectors.toList());
 
-    return Logs.logTime(
+    return Logs.logTimeAsync(
       logger,
       "core.parse-transcript",
       Map.of("transcripts", transcripts),
-      () -> {
-        List<List<TranslationAlternative>> codeEngineTranslationResponse = codeEngineClient.transcriptParserTranslate(
-          transcripts
-        );
-
-        Set<String> seen = new HashSet<>();
-        int invalid = 0;
-        List<ParsedTranscript> result = new ArrayList<>();
-        for (int i = 0; i < alternatives.size(); i++) {
-          Alternative alternative = alternatives.get(i);
-          List<ParsedTranscript> inner = new ArrayList<>();
-          Optional<ParsedTranscript> firstInvalid = Optional.empty();
-          for (TranslationAlternative translationAlternative : codeEngineTranslationResponse.get(
-            i
-          )) {
-            // deduplicate markup.
-            if (seen.contains(translationAlternative.getSentence())) {
-              continue;
-            }
-
-            seen.add(translationAlternative.getSentence());
-            ParsedTranscript parsed = parsedTranscript(alternative, translationAlternative);
+      () ->
+        codeEngineClient
+          .transcriptParserTranslate(transcripts)
+          .thenApplyAsync(
+            codeEngineTranslationResponse -> filter(alternatives, codeEngineTranslationResponse),
+            executor
+          )
+    );
+  }
 
-            if (parsed.isValid) {
-              inner.add(parsed);
-            } else if (firstInvalid.isEmpty()) {
-              firstInvalid = Optional.of(parsed);
-            }
-          }
+  private List<ParsedTranscript> filter(
+    List<Alternative> alternatives,
+    List<List<TranslationAlternative>> codeEngineTranslationResponse
+  ) {
+    Set<String> seen = new HashSet<>();
+    int invalid = 0;
+    List<ParsedTranscript> result = new ArrayList<>();
+    for (int i = 0; i < alternatives.size(); i++) {
+      Alternative alternative = alternatives.get(i);
+      List<ParsedTranscript> inner = new ArrayList<>();
+      Optional<ParsedTranscript> firstInvalid = Optional.empty();
+      for (TranslationAlternative translationAlternative : codeEngineTranslationResponse.get(i)) {
+        // deduplicate markup.
+        if (seen.contains(translationAlternative.getSentence())) {
+          continue;
+        }
 
-          // Only add invalid alternatives if there isn't a valid one for this transcript.
-          if (inner.size() == 0 && firstInvalid.isPresent()) {
-            invalid++;
-            result.add(firstInvalid.get());
-          } else {
-            result.addAll(inner);
-          }
+        seen.add(translationAlternative.getSentence());
+        ParsedTranscript parsed = parsedTranscript(alternative, translationAlternative);
 
-          if (result.size() - invalid >= maxValid) {
-            break;
-          }
+        if (parsed.isValid) {
+          inner.add(parsed);
+        } else if (firstInvalid.isEmpty()) {
+          firstInvalid = Optional.of(parsed);
         }
+      }
 
-        return result;
+      // Only add invalid alternatives if there isn't a valid one for this transcript.
+      if (inner.size() == 0 && firstInvalid.isPresent()) {
+        invalid++;
+        result.add(firstInvalid.get());
+      } else {
+        result.addAll(inner);
       }
-    );
+
+      if (result.size() - invalid >= maxValid) {
+        break;
+      }
+    }
+
+    return result;
   }
 
   private List<Alternative> collectUniqueAlternatives(
@@ -313,21 +342,70 @@ public class TranscriptParser {
     return result;
   }
 
-  public List<ParsedTranscript> parse(
+  /**
+   * Parses alternatives on the parser's own executor, so waiting on the transcript parser model
+   * doesn't hold a thread from the shared pool.
+   */
+  public CompletableFuture<List<ParsedTranscript>> parse(
     List<Alternative> alternatives,
     EditorStateWithMetadata state,
     boolean rerank
   ) {
-    if (rerank) {
-      alternatives = reranker.rerankTranscripts(alternatives, state);
-    }
+    return parse(alternatives, state, rerank, executor);
+  }
 
-    alternatives = transcriptNormalizer.normalize(alternatives);
-    alternatives = substituteCustomWords(alternatives, state);
-    alternatives = addDictateCommands(alternatives, state);
+  /**
+   * Parses alternatives without the parser's executor, blocking until they're parsed. This is for
+   * code that's already evaluating a command (e.g., "repeat"), which can be running on a thread
+   * from that executor, so waiting on another one could deadlock once they're all busy.
+   */
+  public List<ParsedTranscript> parseBlocking(
+    List<Alternative> alternatives,
+    EditorStateWithMetadata state,
+    boolean rerank
+  ) {
+    return parse(alternatives, state, rerank, MoreExecutors.directExecutor()).join();
+  }
 
-    List<ParsedTranscript> result = parseAndFilter(alternatives, state);
-    return rerank ? reranker.rerankParsedTranscripts(result) : result;
+  private CompletableFuture<List<ParsedTranscript>> parse(
+    List<Alternative> alternatives,
+    EditorStateWithMetadata state,
+    boolean rerank,
+    Executor executor
+  ) {
+    return CompletableFuture
+      .supplyAsync(
+        () ->
+          Logs.logTime(
+            logger,
+            "core.prepare-transcripts",
+            Map.of(),
+            () -> {
+              List<Alternative> result = alternatives;
+              if (rerank) {
+                result = reranker.rerankTranscripts(result, state);
+              }
+
+              result = transcriptNormalizer.normalize(result);
+              result = substituteCustomWords(result, state);
+              return addDictateCommands(result, state);
+            }
+          ),
+        executor
+      )
+      .thenCompose(prepared -> parseAndFilter(prepared, state, executor))
+      .thenApplyAsync(
+        result ->
+          rerank
+            ? Logs.logTime(
+              logger,
+              "core.rerank-parsed-transcripts",
+              Map.of(),
+              () -> reranker.rerankParsedTranscripts(result)
+            )
+            : result,
+        executor
+      );
   }
 
   public ParsedTranscript parsedTranscript(
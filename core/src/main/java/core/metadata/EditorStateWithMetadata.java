@@ -1,5 +1,8 @@
 package core.metadata;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import core.gen.rpc.CustomCommand;
 import core.gen.rpc.EditorState;
 import core.gen.rpc.Language;
@@ -10,6 +13,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class EditorStateWithMetadata {
 
@@ -37,6 +41,7 @@ public class EditorStateWithMetadata {
   private boolean logAudio = false;
   private boolean logSource = false;
   private String token = "";
+  private boolean omitCommandSource = false;
 
   public EditorStateWithMetadata() {}
 
@@ -64,7 +69,8 @@ public class EditorStateWithMetadata {
     List<String> customHints,
     boolean logAudio,
     boolean logSource,
-    String token
+    String token,
+    boolean omitCommandSource
   ) {
     this.source = source;
     this.cursor = cursor;
@@ -90,6 +96,7 @@ public class EditorStateWithMetadata {
     this.logAudio = logAudio;
     this.logSource = logSource;
     this.token = token;
+    this.omitCommandSource = omitCommandSource;
   }
 
   public EditorStateWithMetadata(EditorState state) {
@@ -117,7 +124,8 @@ public class EditorStateWithMetadata {
       state.getCustomHintsList(),
       state.getLogAudio(),
       state.getLogSource(),
-      state.getToken()
+      state.getToken(),
+      state.getOmitCommandSource()
     );
     this.stylers = new HashMap<>();
     for (Map.Entry<Integer, StylerType> e : state.getStylerMap().entrySet()) {
@@ -150,7 +158,8 @@ public class EditorStateWithMetadata {
       state.customHints,
       state.logAudio,
       state.logSource,
-      state.token
+      state.token,
+      state.omitCommandSource
     );
   }
 
@@ -250,6 +259,55 @@ public class EditorStateWithMetadata {
     return token;
   }
 
+  public boolean getOmitCommandSource() {
+    return omitCommandSource;
+  }
+
+  // Identifies the file a user is editing, so work can be shared across their requests.
+  public String getSessionKey() {
+    return token + ":" + filename;
+  }
+
+  // A 128-bit hash of everything a command's evaluation can depend on.
+  public HashCode fingerprint() {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String field : Arrays.asList(
+      source,
+      filename,
+      clientIdentifier,
+      application,
+      files.toString(),
+      roots.toString(),
+      tabs.toString(),
+      new TreeMap<>(customWords).toString(),
+      clipboard,
+      new TreeMap<>(stylers).toString(),
+      url,
+      language.toString(),
+      customHints.toString(),
+      token
+    )) {
+      hasher.putInt(field.length()).putString(field, StandardCharsets.UTF_8);
+    }
+
+    for (CustomCommand customCommand : customCommands) {
+      hasher.putBytes(customCommand.toByteArray());
+    }
+
+    return hasher
+      .putInt(cursor)
+      .putBoolean(pluginInstalled)
+      .putBoolean(nux)
+      .putBoolean(autocomplete)
+      .putBoolean(canGetState)
+      .putBoolean(canSetState)
+      .putBoolean(dictateMode)
+      .putBoolean(logAudio)
+      .putBoolean(logSource)
+      .putBoolean(omitCommandSource)
+      .hash();
+  }
+
   public void setSource(String source) {
     this.source = source;
   }
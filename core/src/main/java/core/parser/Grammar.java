@@ -1,6 +1,5 @@
 package core.parser;
 
-import com.google.common.collect.Lists;
 import core.gen.antlr.antlr4.ANTLRv4Parser;
 import core.gen.antlr.antlr4.ANTLRv4ParserBaseVisitor;
 import core.parser.ParseTree;
@@ -34,7 +33,7 @@ import toolbelt.logging.Logs;
 // ParseTree (in MutableParseTree format) we're working with.
 
 @Singleton
-public class Grammar extends ANTLRv4ParserBaseVisitor<List<List<String>>> {
+public class Grammar extends ANTLRv4ParserBaseVisitor<SequenceAutomaton.Expression> {
 
   // If we hit any of these number rules, we will remove all nested parser rules that we see.
   public static final Set<String> numberRules = new HashSet<String>(
@@ -55,10 +54,6 @@ public class Grammar extends ANTLRv4ParserBaseVisitor<List<List<String>>> {
   public HashMap<String, GrammarNode> ruleToGrammarNode;
   private GrammarNode root;
 
-  // This is the hardcoded number of times we will repeat +'s in the ANTLR grammar rules
-  private int maxPlusRepeatTimes = 5;
-  private int maxStarRepeatTimes = 5; // for *'s'
-
   @Inject
   GrammarAntlrParser grammarAntlrParser;
 
@@ -108,7 +103,7 @@ public class Grammar extends ANTLRv4ParserBaseVisitor<List<List<String>>> {
   }
 
   public boolean matchesGrammar(ParseTree tree) {
-    return root.isParseTreeInGrammar(tree, false);
+    return root.isParseTreeInGrammar(tree);
   }
 
   public String toString() {
@@ -131,237 +126,188 @@ public class Grammar extends ANTLRv4ParserBaseVisitor<List<List<String>>> {
     return new ArrayList<>(result);
   }
 
-  private List<List<String>> duplicateSequence(List<List<String>> sequence, int times) {
-    List<List<String>> sequenceWithDups = new ArrayList<>();
-    List<String> copyList;
-    for (int i = 0; i < times; i++) {
-      for (List<String> subsequence : sequence) {
-        copyList = new ArrayList<>();
-        for (int j = 0; j <= i; j++) {
-          copyList.addAll(subsequence);
-        }
-        sequenceWithDups.add(copyList);
-      }
+  private SequenceAutomaton.Expression withSuffix(
+    SequenceAutomaton.Expression expression,
+    ANTLRv4Parser.EbnfSuffixContext suffix
+  ) {
+    if (suffix != null && suffix.QUESTION() != null && suffix.QUESTION().size() > 0) {
+      return SequenceAutomaton.Expression.optional(expression);
+    } else if (suffix != null && suffix.STAR() != null) {
+      return SequenceAutomaton.Expression.star(expression);
+    } else if (suffix != null && suffix.PLUS() != null) {
+      return SequenceAutomaton.Expression.plus(expression);
+    } else {
+      return expression;
     }
-    return sequenceWithDups;
   }
 
-  public List<List<String>> visitRuleref(ANTLRv4Parser.RulerefContext ctx) {
-    String name = ctx.RULE_REF().getText();
-    List<String> ruleSequence = Arrays.asList(name);
-    return new ArrayList<>(Arrays.asList(ruleSequence));
+  private void addAllowedExpression(GrammarNode node, SequenceAutomaton.Expression expression) {
+    node.addAllowedExpression(
+      expression,
+      expression
+        .symbols()
+        .stream()
+        .map(s -> getNode(s))
+        .filter(child -> child.type.length() > 0)
+        .collect(Collectors.toList())
+    );
+  }
+
+  public SequenceAutomaton.Expression visitRuleref(ANTLRv4Parser.RulerefContext ctx) {
+    return SequenceAutomaton.Expression.symbol(ctx.RULE_REF().getText());
   }
 
-  public List<List<String>> visitBlock(ANTLRv4Parser.BlockContext ctx) {
+  public SequenceAutomaton.Expression visitBlock(ANTLRv4Parser.BlockContext ctx) {
     return visit(ctx.altList());
   }
 
-  public List<List<String>> visitAtom(ANTLRv4Parser.AtomContext ctx) {
+  public SequenceAutomaton.Expression visitAtom(ANTLRv4Parser.AtomContext ctx) {
     if (ctx.DOT() != null) {
       return null;
     }
     return visit(ctx.getChild(0));
   }
 
-  public List<List<String>> visitElement(ANTLRv4Parser.ElementContext ctx) {
+  public SequenceAutomaton.Expression visitElement(ANTLRv4Parser.ElementContext ctx) {
     ANTLRv4Parser.EbnfSuffixContext suffix = ctx.ebnfSuffix();
-    List<List<String>> sequence = null;
+    SequenceAutomaton.Expression expression = null;
     if (ctx.labeledElement() != null) {
       if (ctx.labeledElement().atom() != null) {
-        sequence = visit(ctx.labeledElement().atom());
+        expression = visit(ctx.labeledElement().atom());
       } else {
-        sequence = visit(ctx.labeledElement().block());
+        expression = visit(ctx.labeledElement().block());
       }
     } else if (ctx.atom() != null) {
-      sequence = visit(ctx.atom());
+      expression = visit(ctx.atom());
     } else if (ctx.ebnf() != null) {
-      sequence = visit(ctx.ebnf().block());
+      expression = visit(ctx.ebnf().block());
       if (ctx.ebnf().blockSuffix() != null) {
         suffix = ctx.ebnf().blockSuffix().ebnfSuffix();
       }
     }
 
-    if (sequence == null) {
+    if (expression == null) {
       return null;
     }
-    if (suffix != null && suffix.QUESTION() != null && suffix.QUESTION().size() > 0) {
-      sequence.add(Collections.emptyList());
-      return sequence;
-    } else if (suffix != null && suffix.STAR() != null) {
-      sequence = duplicateSequence(sequence, maxStarRepeatTimes);
-      sequence.add(Collections.emptyList());
-      return sequence;
-    } else if (suffix != null && suffix.PLUS() != null) {
-      return duplicateSequence(sequence, maxPlusRepeatTimes);
-    } else {
-      return sequence;
-    }
+    return withSuffix(expression, suffix);
   }
 
-  public List<List<String>> visitAlternative(ANTLRv4Parser.AlternativeContext ctx) {
+  public SequenceAutomaton.Expression visitAlternative(ANTLRv4Parser.AlternativeContext ctx) {
     // Handle parser terms of the form: a b c
-    List<List<List<String>>> typesByPosition = new ArrayList<>();
+    List<SequenceAutomaton.Expression> elements = new ArrayList<>();
     for (ANTLRv4Parser.ElementContext child : ctx.element()) {
-      List<List<String>> visitResults = visit(child);
-      if (visitResults != null) {
-        typesByPosition.add(visitResults);
+      SequenceAutomaton.Expression visitResult = visit(child);
+      if (visitResult != null) {
+        elements.add(visitResult);
       }
     }
-    // After taking cartsian product of possibilities at each position, we need to flatten the
-    // interior lists
-    List<List<List<String>>> cartesianProductCommands = Lists.cartesianProduct(typesByPosition);
-    List<List<String>> collapsedCommands = new ArrayList<>();
-    for (List<List<String>> listToConcat : cartesianProductCommands) {
-      collapsedCommands.add(
-        listToConcat.stream().flatMap(List::stream).collect(Collectors.toList())
-      );
-    }
-    return collapsedCommands;
+    return SequenceAutomaton.Expression.sequence(elements);
   }
 
-  public List<List<String>> visitAltList(ANTLRv4Parser.AltListContext ctx) {
+  public SequenceAutomaton.Expression visitAltList(ANTLRv4Parser.AltListContext ctx) {
     // Handle sub-rules of the form (a | b | c). See visitRuleAltList.
-    List<List<String>> allSequences = new ArrayList<>();
+    List<SequenceAutomaton.Expression> alternatives = new ArrayList<>();
     for (ANTLRv4Parser.AlternativeContext child : ctx.alternative()) {
-      List<List<String>> visitResults = visit(child);
-      allSequences.addAll(visitResults);
+      alternatives.add(visit(child));
     }
-    return allSequences;
+    return SequenceAutomaton.Expression.alternation(alternatives);
   }
 
-  public List<List<String>> visitRuleAltList(ANTLRv4Parser.RuleAltListContext ctx) {
+  public SequenceAutomaton.Expression visitRuleAltList(ANTLRv4Parser.RuleAltListContext ctx) {
     // Handles terms of the form ruleName: a | b | c.
     // Make sure the sub-rules are non-null.
-    List<List<String>> allSequences = new ArrayList<>();
+    List<SequenceAutomaton.Expression> alternatives = new ArrayList<>();
     for (ANTLRv4Parser.LabeledAltContext child : ctx.labeledAlt()) {
-      List<List<String>> visitResults = visit(child.alternative());
-      if (visitResults != null) {
-        allSequences.addAll(visitResults);
+      SequenceAutomaton.Expression visitResult = visit(child.alternative());
+      if (visitResult != null) {
+        alternatives.add(visitResult);
       }
     }
-    return allSequences;
+    return SequenceAutomaton.Expression.alternation(alternatives);
   }
 
   @Override
-  public List<List<String>> visitParserRuleSpec(ANTLRv4Parser.ParserRuleSpecContext ctx) {
+  public SequenceAutomaton.Expression visitParserRuleSpec(
+    ANTLRv4Parser.ParserRuleSpecContext ctx
+  ) {
     String name = ctx.RULE_REF().getText();
     GrammarNode currentNode = getNode(name);
 
     for (int i = 0; i < ctx.getChildCount(); i++) {
-      List<List<String>> childSequences = visit(ctx.getChild(i));
-      if (childSequences != null) {
-        for (List<String> sequence : childSequences) {
-          List<GrammarNode> nodeSequence = sequence
-            .stream()
-            .map(s -> getNode(s))
-            .filter(node -> node.type.length() > 0)
-            .collect(Collectors.toList());
-          currentNode.addAllowedSequence(nodeSequence);
-        }
+      SequenceAutomaton.Expression expression = visit(ctx.getChild(i));
+      if (expression != null) {
+        addAllowedExpression(currentNode, expression);
       }
     }
 
-    return new ArrayList<>(Arrays.asList(Arrays.asList(name)));
+    return SequenceAutomaton.Expression.symbol(name);
   }
 
-  public List<List<String>> visitLexerElement(ANTLRv4Parser.LexerElementContext ctx) {
-    ANTLRv4Parser.EbnfSuffixContext suffix = ctx.ebnfSuffix();
-    List<List<String>> sequence = null;
-
+  public SequenceAutomaton.Expression visitLexerElement(ANTLRv4Parser.LexerElementContext ctx) {
+    SequenceAutomaton.Expression expression = null;
     if (ctx.labeledLexerElement() != null) {
       if (ctx.labeledLexerElement().lexerAtom() != null) {
-        sequence = visit(ctx.labeledLexerElement().lexerAtom());
+        expression = visit(ctx.labeledLexerElement().lexerAtom());
       } else {
-        sequence = visit(ctx.labeledLexerElement().lexerBlock());
+        expression = visit(ctx.labeledLexerElement().lexerBlock());
       }
     } else if (ctx.lexerAtom() != null) {
-      sequence = visit(ctx.lexerAtom());
+      expression = visit(ctx.lexerAtom());
     } else if (ctx.lexerBlock() != null) {
-      sequence = visit(ctx.lexerBlock());
+      expression = visit(ctx.lexerBlock());
     }
-    if (sequence == null) {
+
+    if (expression == null) {
       return null;
     }
-    if (suffix != null && suffix.QUESTION() != null && suffix.QUESTION().size() > 0) {
-      sequence.add(Collections.emptyList());
-      return sequence;
-    } else if (suffix != null && suffix.STAR() != null) {
-      sequence = duplicateSequence(sequence, maxStarRepeatTimes);
-      sequence.add(Collections.emptyList());
-      return sequence;
-    } else if (suffix != null && suffix.PLUS() != null) {
-      return duplicateSequence(sequence, maxPlusRepeatTimes);
-    } else {
-      return sequence;
-    }
+    return withSuffix(expression, ctx.ebnfSuffix());
   }
 
-  public List<List<String>> visitTerminal(ANTLRv4Parser.TerminalContext ctx) {
+  public SequenceAutomaton.Expression visitTerminal(ANTLRv4Parser.TerminalContext ctx) {
     if (ctx.STRING_LITERAL() != null) {
-      String stringLiteral = ctx.STRING_LITERAL().getText();
-      String ret = stringLiteral.substring(1, stringLiteral.length() - 1);
-      return new ArrayList<>(Arrays.asList(Arrays.asList(stringLiteral)));
+      return SequenceAutomaton.Expression.symbol(ctx.STRING_LITERAL().getText());
     } else if (ctx.TOKEN_REF() == null) {
       return null;
     }
 
-    return new ArrayList<>(Arrays.asList(Arrays.asList(ctx.TOKEN_REF().getText())));
+    return SequenceAutomaton.Expression.symbol(ctx.TOKEN_REF().getText());
   }
 
-  public List<List<String>> visitLexerBlock(ANTLRv4Parser.LexerBlockContext ctx) {
+  public SequenceAutomaton.Expression visitLexerBlock(ANTLRv4Parser.LexerBlockContext ctx) {
     return visit(ctx.lexerAltList());
   }
 
-  public List<List<String>> visitLexerAltList(ANTLRv4Parser.LexerAltListContext ctx) {
+  public SequenceAutomaton.Expression visitLexerAltList(ANTLRv4Parser.LexerAltListContext ctx) {
     // Lexer equivalent of visitRuleAltList.
-    List<List<String>> allSequences = new ArrayList<>();
+    List<SequenceAutomaton.Expression> alternatives = new ArrayList<>();
     for (ANTLRv4Parser.LexerAltContext child : ctx.lexerAlt()) {
-      List<List<String>> visitResults = visit(child.lexerElements());
-      allSequences.addAll(visitResults);
+      alternatives.add(visit(child.lexerElements()));
     }
-    return allSequences;
+    return SequenceAutomaton.Expression.alternation(alternatives);
   }
 
-  public List<List<String>> visitLexerElements(ANTLRv4Parser.LexerElementsContext ctx) {
+  public SequenceAutomaton.Expression visitLexerElements(ANTLRv4Parser.LexerElementsContext ctx) {
     // Handle lexer terms of the form A B C.
-    List<List<List<String>>> typesByPosition = new ArrayList<>();
+    List<SequenceAutomaton.Expression> elements = new ArrayList<>();
     for (ANTLRv4Parser.LexerElementContext child : ctx.lexerElement()) {
-      List<List<String>> visitResults = visit(child);
-      if (visitResults != null) {
-        typesByPosition.add(visitResults);
+      SequenceAutomaton.Expression visitResult = visit(child);
+      if (visitResult != null) {
+        elements.add(visitResult);
       }
     }
-    // After taking cartsian product of possibilities at each position, we need to flatten the
-    // interior lists
-    List<List<List<String>>> cartesianProductCommands = Lists.cartesianProduct(typesByPosition);
-    List<List<String>> collapsedCommands = new ArrayList<>();
-    for (List<List<String>> listToConcat : cartesianProductCommands) {
-      collapsedCommands.add(
-        listToConcat.stream().flatMap(List::stream).collect(Collectors.toList())
-      );
-    }
-    return collapsedCommands;
+    return SequenceAutomaton.Expression.sequence(elements);
   }
 
   @Override
-  public List<List<String>> visitLexerRuleSpec(ANTLRv4Parser.LexerRuleSpecContext ctx) {
+  public SequenceAutomaton.Expression visitLexerRuleSpec(ANTLRv4Parser.LexerRuleSpecContext ctx) {
     String name = ctx.TOKEN_REF().getText();
 
     if (ignoredLexerTokens.contains(name)) {
       // We need to manually treat particular tokens differently.
       return null;
     } else {
-      GrammarNode currentNode = getNode(name);
-      List<List<String>> childSequences = visit(ctx.lexerRuleBlock().lexerAltList());
-      for (List<String> sequence : childSequences) {
-        List<GrammarNode> nodeSequence = sequence
-          .stream()
-          .map(s -> getNode(s))
-          .filter(node -> node.type.length() > 0)
-          .collect(Collectors.toList());
-        currentNode.addAllowedSequence(nodeSequence);
-      }
-      return new ArrayList<>(Arrays.asList(Arrays.asList(name)));
+      addAllowedExpression(getNode(name), visit(ctx.lexerRuleBlock().lexerAltList()));
+      return SequenceAutomaton.Expression.symbol(name);
     }
   }
 }
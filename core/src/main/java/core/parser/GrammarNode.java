@@ -1,19 +1,16 @@
 package core.parser;
 
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.Lists;
 import core.util.NumberConverter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
-import javax.inject.Inject;
 
 // Used to build a tree structure that represents allowable rule patterns for the types in our grammar.
 // This is a building block to allow checking validity of a markup string since we can trace the
@@ -21,6 +18,9 @@ import javax.inject.Inject;
 
 public class GrammarNode {
 
+  // print each step of grammar validation, which is useful when debugging the grammar.
+  private static final boolean trace = System.getenv("GRAMMAR_TRACE") != null;
+
   private NumberConverter numberConverter;
   public final String type;
   public final boolean isLexerNode;
@@ -33,9 +33,10 @@ public class GrammarNode {
   // while Parser children should have their type match itself.
   private Map<String, GrammarNode> allowedChildren = new HashMap<>();
 
-  // Not all combinations of children are allowed in any sequence.
-  // We exhaust all the possiblities, accounting for optional or repeatable tags.
-  private Set<List<String>> allowedChildSequences = new HashSet<>();
+  // Not all combinations of children are allowed in any sequence. The alternatives of the rule
+  // form an expression over child types, which is compiled into an automaton when first used.
+  private SequenceAutomaton.Expression allowedChildExpression = SequenceAutomaton.Expression.none();
+  private SequenceAutomaton allowedChildAutomaton;
 
   // Maps a string to a valid lexer tag. The string has single-quotes stripped.
   // We apply this map to incoming nodes/markup so we can match with the allowed
@@ -81,28 +82,30 @@ public class GrammarNode {
     }
   }
 
-  public void addAllowedSequence(List<GrammarNode> nodes) {
-    if (nodes.size() > 0) {
-      for (GrammarNode node : nodes) {
-        addAllowedChild(node);
-      }
+  public void addAllowedExpression(
+    SequenceAutomaton.Expression expression,
+    Collection<GrammarNode> children
+  ) {
+    for (GrammarNode child : children) {
+      addAllowedChild(child);
     }
-    addAllowedSubsequence(nodes);
+
+    setAllowedChildExpression(
+      SequenceAutomaton.Expression.alternation(List.of(allowedChildExpression, expression))
+    );
   }
 
-  private void addAllowedSubsequence(List<GrammarNode> nodes) {
-    // Version of the above that does not need to add new children
-    if (nodes.size() > 0) {
-      List<String> typeSequence = nodes
-        .stream()
-        .map(n -> n.type)
-        .filter(s -> !(s.equals("EOF")))
-        .collect(Collectors.toList());
-      allowedChildSequences.add(typeSequence);
-    } else {
-      // Allow completely optional rules.
-      allowedChildSequences.add(Collections.emptyList());
+  private synchronized void setAllowedChildExpression(SequenceAutomaton.Expression expression) {
+    allowedChildExpression = expression;
+    allowedChildAutomaton = null;
+  }
+
+  private synchronized SequenceAutomaton allowedChildAutomaton() {
+    if (allowedChildAutomaton == null) {
+      allowedChildAutomaton = SequenceAutomaton.compile(allowedChildExpression);
     }
+
+    return allowedChildAutomaton;
   }
 
   protected Map<String, Integer> getChildDepthMap(int currentDepth) {
@@ -138,50 +141,36 @@ public class GrammarNode {
       .collect(Collectors.toSet());
 
     if (optionalChildren.size() > 0) {
-      Set<List<String>> originalChildSequences = new HashSet<>(allowedChildSequences);
-      // For each existing allowed sequence, we optionally remove the optional components
-      // and add the resulting sequence as allowed.
-      // We do it this way to handle multiple optional components.
-      for (List<String> allowedSeq : originalChildSequences) {
-        List<List<String>> allowedSeqWithOptionals = allowedSeq
-          .stream()
-          .map(s -> optionalChildren.contains(s) ? Arrays.asList(s, "") : Arrays.asList(s))
-          .collect(Collectors.toList());
-        List<List<String>> cartesianProductSequences = Lists.cartesianProduct(
-          allowedSeqWithOptionals
-        );
-
-        for (List<String> newSequence : cartesianProductSequences) {
-          List<GrammarNode> newGrammarNodeSequence = newSequence
-            .stream()
-            .filter(s -> s.length() > 0)
-            .map(s -> allowedChildren.get(s))
-            .collect(Collectors.toList());
-          addAllowedSubsequence(newGrammarNodeSequence);
-        }
-      }
+      // Any optional child can be skipped wherever it appears in the rule.
+      setAllowedChildExpression(
+        allowedChildExpression.map(
+          s ->
+            optionalChildren.contains(s)
+              ? SequenceAutomaton.Expression.optional(SequenceAutomaton.Expression.symbol(s))
+              : SequenceAutomaton.Expression.symbol(s)
+        )
+      );
     }
+
+    // compile ahead of time, so validation doesn't pay for it.
+    allowedChildAutomaton();
   }
 
   public Set<String> getAllowedChildren() {
     return allowedChildren.keySet();
   }
 
-  public Set<List<String>> getAllowedChildSequences() {
-    return allowedChildSequences;
-  }
-
   public GrammarNode getChild(String type) {
     return allowedChildren.get(type);
   }
 
   public boolean isAllowedSequence(List<String> input) {
     // Generally use isParseTreeInGrammar since that works recursively. This is used for determining quantifier commands.
-    return allowedChildSequences.contains(input);
+    return allowedChildAutomaton().accepts(input);
   }
 
   protected boolean isParseTreeInGrammar(ParseTree node) {
-    return isParseTreeInGrammar(node, true);
+    return isParseTreeInGrammar(node, trace);
   }
 
   private boolean isParseTreeLexerNode(ParseTree node) {
@@ -273,7 +262,7 @@ public class GrammarNode {
       .add("type", type)
       .add("isLexerNode", isLexerNode)
       .add("allowedChildren", allowedChildren)
-      .add("allowedChildSequences", allowedChildSequences)
+      .add("allowedChildExpression", allowedChildExpression)
       .add("stringToLexerRule", stringToLexerRule)
       .toString();
   }
@@ -289,10 +278,7 @@ public class GrammarNode {
     if (allowedChildren.size() == 0) {
       layerResult = " [ NODE Type: " + type + " , isLexer: " + Boolean.toString(isLexerNode) + "] ";
     } else {
-      String childrenSequences = "";
-      for (List<String> seq : allowedChildSequences) {
-        childrenSequences += seq.stream().collect(Collectors.joining(", ")) + "\n";
-      }
+      String childrenSequences = allowedChildExpression + "\n";
       layerResult =
         " [ NODE Type: " +
         type +
@@ -0,0 +1,15 @@
+package core.parser;
+
+import java.util.Optional;
+
+public class ParseResult {
+
+  public final ParseTree tree;
+  // The start of the first syntax error, found while walking the tree-sitter tree.
+  public final Optional<Integer> errorStart;
+
+  public ParseResult(ParseTree tree, Optional<Integer> errorStart) {
+    this.tree = tree;
+    this.errorStart = errorStart;
+  }
+}
@@ -0,0 +1,271 @@
+package core.parser;
+
+import core.gen.rpc.Language;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A flat, pre-order record of the nodes walked from a tree-sitter tree. Keeping this around for
+ * an editor session lets us copy unchanged subtrees into the next parse rather than walking them
+ * again through the tree cursor.
+ */
+class ParseSnapshot {
+
+  // Tree-sitter lexers can look past the end of a token, so nodes that end right before an edit
+  // (or start right after it) aren't safe to reuse. This doesn't bound external scanners or
+  // conflict resolution, which is why subtrees that error recovery touched are never reused.
+  private static final int lookahead = 8;
+
+  // Node types and field names are a small, fixed set per grammar, so they're interned into ids
+  // shared by every snapshot rather than kept as a separate string per node.
+  private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private static final List<String> strings = new CopyOnWriteArrayList<>();
+  private static final int error = id("ERROR");
+
+  public final String source;
+  public final Language language;
+
+  private int size = 0;
+  private int[] types = new int[64];
+  private int[] names = new int[64];
+  private int[] starts = new int[64];
+  private int[] stops = new int[64];
+  // Index just past the last descendant of each node.
+  private int[] ends = new int[64];
+  // Whether each node's subtree has an ERROR or MISSING node, whose recovery can differ after an
+  // edit anywhere in the source.
+  private boolean[] recovered = new boolean[64];
+  private Map<Long, Integer> outermostByRange;
+  // The first ERROR node in pre-order, which is also the outermost one, or -1.
+  private int firstError = -1;
+
+  public ParseSnapshot(String source, Language language) {
+    this.source = source;
+    this.language = language;
+  }
+
+  private static int id(String string) {
+    Integer id = ids.get(string);
+    if (id != null) {
+      return id;
+    }
+
+    synchronized (strings) {
+      return ids.computeIfAbsent(
+        string,
+        s -> {
+          strings.add(s);
+          return strings.size() - 1;
+        }
+      );
+    }
+  }
+
+  private static String string(int id) {
+    return strings.get(id);
+  }
+
+  public class Edit {
+
+    private final ParseSnapshot previous;
+    private final int prefix;
+    private final int delta;
+    private final int newSuffixStart;
+
+    private Edit(ParseSnapshot previous) {
+      this.previous = previous;
+      int max = Math.min(previous.source.length(), source.length());
+      int prefix = 0;
+      while (prefix < max && previous.source.charAt(prefix) == source.charAt(prefix)) {
+        prefix++;
+      }
+
+      int suffix = 0;
+      while (
+        suffix < max - prefix &&
+        previous.source.charAt(previous.source.length() - suffix - 1) ==
+        source.charAt(source.length() - suffix - 1)
+      ) {
+        suffix++;
+      }
+
+      this.prefix = prefix;
+      this.delta = source.length() - previous.source.length();
+      this.newSuffixStart = source.length() - suffix;
+    }
+
+    /**
+     * Copies the previous subtree matching the given node if it lies entirely outside of the
+     * edit, returning whether anything was copied.
+     */
+    public boolean reuse(String type, String name, int start, int stop) {
+      int shift;
+      if (stop + lookahead <= prefix) {
+        shift = 0;
+      } else if (start - lookahead >= newSuffixStart) {
+        shift = delta;
+      } else {
+        return false;
+      }
+
+      int node = previous.find(type, name, start - shift, stop - shift);
+      if (node == -1 || previous.recovered[node]) {
+        return false;
+      }
+
+      copy(previous, node, shift);
+      return true;
+    }
+  }
+
+  /** Describes how this snapshot's source differs from the one previously parsed. */
+  public Edit editFrom(ParseSnapshot previous) {
+    return new Edit(previous);
+  }
+
+  private synchronized Map<Long, Integer> outermostByRange() {
+    if (outermostByRange == null) {
+      outermostByRange = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        outermostByRange.putIfAbsent(rangeKey(starts[i], stops[i]), i);
+      }
+    }
+
+    return outermostByRange;
+  }
+
+  private int find(String typeString, String nameString, int start, int stop) {
+    Integer node = outermostByRange().get(rangeKey(start, stop));
+    if (node == null) {
+      return -1;
+    }
+
+    int type = id(typeString);
+    int name = id(nameString);
+    // Nodes with a single child share the same range, so walk down the chain.
+    for (int i = node; i < size && starts[i] == start && stops[i] == stop; i++) {
+      if (types[i] == type && names[i] == name) {
+        return i;
+      }
+
+      if (ends[i] == i + 1) {
+        break;
+      }
+    }
+
+    return -1;
+  }
+
+  private long rangeKey(int start, int stop) {
+    return ((long) start << 32) | stop;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= types.length) {
+      return;
+    }
+
+    int length = Math.max(capacity, types.length * 2);
+    types = Arrays.copyOf(types, length);
+    names = Arrays.copyOf(names, length);
+    starts = Arrays.copyOf(starts, length);
+    stops = Arrays.copyOf(stops, length);
+    ends = Arrays.copyOf(ends, length);
+    recovered = Arrays.copyOf(recovered, length);
+  }
+
+  /** Adds a node whose children are added next, returning its index for {@link #close}. */
+  public int open(String type, String name, int start, int stop) {
+    ensureCapacity(size + 1);
+    types[size] = id(type);
+    if (firstError == -1 && types[size] == error) {
+      firstError = size;
+    }
+
+    names[size] = id(name);
+    starts[size] = start;
+    stops[size] = stop;
+    ends[size] = size + 1;
+    // missing nodes are the only ones tree-sitter gives an empty range.
+    recovered[size] = types[size] == error || start == stop;
+    return size++;
+  }
+
+  public void close(int node) {
+    ends[node] = size;
+    for (int child = node + 1; child < size && !recovered[node]; child = ends[child]) {
+      recovered[node] = recovered[child];
+    }
+  }
+
+  private void copy(ParseSnapshot other, int node, int shift) {
+    int length = other.ends[node] - node;
+    int offset = size - node;
+    ensureCapacity(size + length);
+    System.arraycopy(other.types, node, types, size, length);
+    System.arraycopy(other.names, node, names, size, length);
+    System.arraycopy(other.recovered, node, recovered, size, length);
+    for (int i = 0; i < length; i++) {
+      if (firstError == -1 && types[size + i] == error) {
+        firstError = size + i;
+      }
+      starts[size + i] = other.starts[node + i] + shift;
+      stops[size + i] = other.stops[node + i] + shift;
+      ends[size + i] = other.ends[node + i] + offset;
+    }
+    size += length;
+  }
+
+  /** The start of the outermost ERROR node that comes first in the source, if any. */
+  public Optional<Integer> firstErrorStart() {
+    return firstError == -1 ? Optional.empty() : Optional.of(starts[firstError]);
+  }
+
+  public ParseTree toParseTree() {
+    return toParseTree(0, Optional.empty());
+  }
+
+  private ParseTree toParseTree(int node, Optional<ParseTree> parent) {
+    String name = string(names[node]);
+    ParseTree result = new ParseTree(
+      string(types[node]),
+      name,
+      source,
+      starts[node],
+      stops[node],
+      parent
+    );
+
+    // leaves keep the shared empty list of children.
+    if (ends[node] > node + 1) {
+      List<ParseTree> children = new ArrayList<>();
+      for (int child = node + 1; child < ends[node]; child = ends[child]) {
+        children.add(toParseTree(child, Optional.of(result)));
+      }
+      result.setChildren(children);
+    }
+
+    // If this node is named, wrap the type node with the name node.
+    if (!name.equals("")) {
+      ParseTree nameTree = new ParseTree(
+        name,
+        name,
+        source,
+        starts[node],
+        stops[node],
+        parent
+      );
+      nameTree.setChildren(Arrays.asList(result));
+      result.setParent(Optional.of(nameTree));
+      return nameTree;
+    }
+
+    return result;
+  }
+}
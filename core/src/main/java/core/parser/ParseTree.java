@@ -1,6 +1,7 @@
 package core.parser;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -9,7 +10,7 @@ public class ParseTree {
 
   private String type = "";
   private String name = "";
-  private List<ParseTree> children = new ArrayList<>();
+  private List<ParseTree> children = Collections.emptyList();
   private Optional<ParseTree> parent = Optional.empty();
   private String source = ""; // Note that this should be the same for every node in a tree.
   private int start = 0;
@@ -5,15 +5,15 @@ import ai.serenade.treesitter.Node;
 import ai.serenade.treesitter.Tree;
 import ai.serenade.treesitter.TreeCursor;
 import ai.serenade.treesitter.TreeCursorNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import core.exception.CannotDetermineLanguage;
 import core.gen.rpc.Language;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -34,6 +34,13 @@ public class Parser {
 
   private Logger logger = LoggerFactory.getLogger(Parser.class);
 
+  // The last parse for each session, which is the starting point for the next incremental parse.
+  private Cache<String, ParseSnapshot> sessions = CacheBuilder
+    .newBuilder()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
   static {
     Env env = new Env();
     String path = env.sourceRoot() + "/core/src/dist/lib/libjava-tree-sitter";
@@ -48,48 +55,31 @@ public class Parser {
   @Inject
   public Parser() {}
 
-  private ParseTree convertToParseTree(
+  private void record(
     TreeCursor cursor,
-    String source,
-    Optional<ParseTree> parent
+    ParseSnapshot snapshot,
+    Optional<ParseSnapshot.Edit> edit
   ) {
     TreeCursorNode current = cursor.getCurrentTreeCursorNode();
+    String type = current.getType();
+    String name = current.getName() != null ? current.getName() : "";
+    int start = current.getStartByte();
+    int stop = current.getEndByte();
+
+    // Subtrees outside of the edit are copied from the previous parse without descending.
+    if (edit.isPresent() && edit.get().reuse(type, name, start, stop)) {
+      return;
+    }
 
-    ParseTree result = new ParseTree(
-      current.getType(),
-      current.getName() != null ? current.getName() : "",
-      source,
-      current.getStartByte(),
-      current.getEndByte(),
-      parent
-    );
-
-    List<ParseTree> children = new ArrayList<>();
+    int node = snapshot.open(type, name, start, stop);
     if (cursor.gotoFirstChild()) {
       do {
-        children.add(convertToParseTree(cursor, source, Optional.of(result)));
+        record(cursor, snapshot, edit);
       } while (cursor.gotoNextSibling());
 
       cursor.gotoParent();
     }
-    result.setChildren(children);
-
-    // If this node is named, wrap the type node with the name node.
-    if (current.getName() != null) {
-      ParseTree nameTree = new ParseTree(
-        current.getName(),
-        current.getName(),
-        source,
-        current.getStartByte(),
-        current.getEndByte(),
-        parent
-      );
-      nameTree.setChildren(Arrays.asList(result));
-      result.setParent(Optional.of(nameTree));
-      return nameTree;
-    }
-
-    return result;
+    snapshot.close(node);
   }
 
   private long treeSitterLanguage(Language language) {
@@ -125,27 +115,60 @@ public class Parser {
   }
 
   public ParseTree parse(String source, Language language) throws UnsupportedEncodingException {
+    return parse(Optional.empty(), source, language).tree;
+  }
+
+  /**
+   * Parses the source, copying the unchanged parts of the previous walk for the same session
+   * (e.g., the file a user is editing), so only the edited region is walked through the tree
+   * cursor again. tree-sitter still parses the whole source, and the ParseTree is still built and
+   * post-processed in full, since its nodes hold absolute offsets that post-processing edits.
+   */
+  public ParseResult parse(Optional<String> session, String source, Language language)
+    throws UnsupportedEncodingException {
+    Optional<ParseSnapshot> previous = session
+      .flatMap(s -> Optional.ofNullable(sessions.getIfPresent(s)))
+      .filter(p -> p.language == language);
+
     return Logs.logTime(
       logger,
       "core.parse-source",
-      Map.of("language", language),
+      Map.of("language", language, "incremental", previous.isPresent()),
       () -> {
         try {
-          try (ai.serenade.treesitter.Parser parser = new ai.serenade.treesitter.Parser()) {
-            parser.setLanguage(treeSitterLanguage(language));
-            try (Tree tree = parser.parseString(source)) {
-              try (TreeCursor cursor = tree.getRootNode().walk()) {
-                ParseTree convertedTree = convertToParseTree(cursor, source, Optional.empty());
-
-                postProcessor.postProcessParseTree(language, convertedTree);
-                return convertedTree;
-              }
-            }
-          }
+          ParseSnapshot snapshot = snapshot(source, language, previous);
+          session.ifPresent(s -> sessions.put(s, snapshot));
+
+          ParseTree convertedTree = snapshot.toParseTree();
+          postProcessor.postProcessParseTree(language, convertedTree);
+          return new ParseResult(convertedTree, snapshot.firstErrorStart());
         } catch (UnsupportedEncodingException e) {
           throw new RuntimeException(e);
         }
       }
     );
   }
+
+  private ParseSnapshot snapshot(
+    String source,
+    Language language,
+    Optional<ParseSnapshot> previous
+  ) throws UnsupportedEncodingException {
+    try (ai.serenade.treesitter.Parser parser = new ai.serenade.treesitter.Parser()) {
+      parser.setLanguage(treeSitterLanguage(language));
+      try (Tree tree = parser.parseString(source)) {
+        try (TreeCursor cursor = tree.getRootNode().walk()) {
+          ParseSnapshot snapshot = new ParseSnapshot(source, language);
+          record(cursor, snapshot, previous.map(p -> snapshot.editFrom(p)));
+          return snapshot;
+        }
+      }
+    }
+  }
+
+  /** The converted parse tree before post-processing, for timing the post-processor on its own. */
+  public ParseTree parseWithoutPostProcessing(String source, Language language)
+    throws UnsupportedEncodingException {
+    return snapshot(source, language, Optional.empty()).toParseTree();
+  }
 }
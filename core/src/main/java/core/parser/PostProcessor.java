@@ -11,7 +11,6 @@ import grammar.gen.rpc.Production;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -19,16 +18,48 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import toolbelt.languages.LanguageDeterminer;
 
 @Singleton
 public class PostProcessor {
-  // For a given rule, stores pre-computed map keyed on a list of ParseTree types
-  // without placeholders, so that we can quickly find the matching production with placeholders
-  private IdentityHashMap<GrammarTree, Map<List<String>, Production>> productionsWithPlaceholders = new IdentityHashMap<>();
+
+  // A production along with the first node type in it for each name.
+  private static class Match {
+
+    public final Production production;
+    public final Map<String, NodeType> nodeTypes = new HashMap<>();
+
+    public Match(Production production) {
+      this.production = production;
+      for (NodeType nodeType : production.getNodeTypeList()) {
+        nodeTypes.putIfAbsent(nodeType.getName(), nodeType);
+      }
+    }
+  }
+
+  // Productions keyed on their child types without placeholders, so a node's children can be
+  // matched one at a time without building a key.
+  private static class Trie {
+
+    public Map<String, Trie> children = new HashMap<>();
+    public Optional<Match> match = Optional.empty();
+  }
+
+  // Everything we need from a GrammarTree while processing a node, computed once at startup
+  // rather than by scanning the tree's children for every node.
+  private static class Rule {
+
+    public final Set<String> placeholders = new HashSet<>();
+    public final Set<String> fieldsToMerge = new HashSet<>();
+    public final Map<NodeType, GrammarTree> localChildren = new HashMap<>();
+    public final Map<String, NodeType> localNodeTypes = new HashMap<>();
+    public final Trie productions = new Trie();
+  }
+
+  private IdentityHashMap<GrammarTree, Rule> rules = new IdentityHashMap<>();
+  private IdentityHashMap<GrammarRoot, Set<String>> wildcardRules = new IdentityHashMap<>();
 
   public Map<Language, GrammarRoot> flattenedGrammars = new HashMap<>();
 
@@ -51,96 +82,85 @@ public class PostProcessor {
         throw new RuntimeException(e);
       }
 
-      flattenedGrammars
-        .get(language)
-        .getRuleMap()
-        .values()
-        .stream()
-        .forEach(tree -> initializeProductionsWithPlaceholders(tree));
+      GrammarRoot root = flattenedGrammars.get(language);
+      wildcardRules.put(root, new HashSet<>(root.getWildCardRuleList()));
+      root.getRuleMap().values().stream().forEach(tree -> initializeRule(tree));
     }
   }
 
-  private void initializeProductionsWithPlaceholders(GrammarTree tree) {
-    Map<List<String>, Production> localProductions = new HashMap<>();
-    tree
-      .getFlattenedProductionList()
-      .stream()
-      .forEach(
-        production ->
-          localProductions.put(
-            production
-              .getNodeTypeList()
-              .stream()
-              .filter(nodeType -> !nodeType.getType().equals("PLACEHOLDER"))
-              .map(nodeType -> nodeType.getName())
-              .collect(Collectors.toList()),
-            production
-          )
-      );
+  private void initializeRule(GrammarTree tree) {
+    Rule rule = new Rule();
+    for (GrammarTree child : tree.getLocalChildList()) {
+      NodeType nodeType = child.getNodeType();
+      if (nodeType.getType().equals("PLACEHOLDER")) {
+        rule.placeholders.add(nodeType.getName());
+      }
+      if (Arrays.asList("FIELD", "PLACEHOLDER").contains(nodeType.getType())) {
+        rule.fieldsToMerge.add(nodeType.getName());
+      }
 
-    productionsWithPlaceholders.put(tree, localProductions);
-    tree
-      .getLocalChildList()
-      .stream()
-      .forEach(childTree -> initializeProductionsWithPlaceholders(childTree));
+      rule.localChildren.putIfAbsent(nodeType, child);
+      rule.localNodeTypes.putIfAbsent(nodeType.getName(), nodeType);
+    }
+
+    for (Production production : tree.getFlattenedProductionList()) {
+      Trie current = rule.productions;
+      for (NodeType nodeType : production.getNodeTypeList()) {
+        if (!nodeType.getType().equals("PLACEHOLDER")) {
+          current = current.children.computeIfAbsent(nodeType.getName(), k -> new Trie());
+        }
+      }
+      current.match = Optional.of(new Match(production));
+    }
+
+    rules.put(tree, rule);
+    tree.getLocalChildList().stream().forEach(childTree -> initializeRule(childTree));
   }
 
-  private Optional<Production> findMatchingSequence(
-    GrammarRoot root,
-    GrammarTree tree,
-    ParseTree node
-  ) {
-    List<String> sequenceWithoutPlaceholders = node
-      .getChildren()
-      .stream()
-      .map(child -> child.getType())
-      .filter(
-        name ->
-          !(
-            tree
-              .getLocalChildList()
-              .stream()
-              .anyMatch(
-                childTree ->
-                  childTree.getNodeType().getType().equals("PLACEHOLDER") &&
-                  childTree.getNodeType().getName().equals(name)
-              )
-          ) &&
-          !root.getWildCardRuleList().contains(name)
-      )
-      .collect(Collectors.toList());
-
-    return Optional.ofNullable(
-      productionsWithPlaceholders.get(tree).get(sequenceWithoutPlaceholders)
-    );
+  private Optional<Match> findMatchingSequence(GrammarRoot root, GrammarTree tree, ParseTree node) {
+    Set<String> wildcards = wildcardRules.get(root);
+    Rule rule = rules.get(tree);
+    Trie current = rule.productions;
+    for (ParseTree child : node.getChildren()) {
+      String name = child.getType();
+      if (rule.placeholders.contains(name) || wildcards.contains(name)) {
+        continue;
+      }
+
+      current = current.children.get(name);
+      if (current == null) {
+        return Optional.empty();
+      }
+    }
+
+    return current.match;
   }
 
   private void addPlaceholdersToTree(GrammarRoot root, GrammarTree tree, ParseTree node) {
-    Optional<Production> matchingSequence = findMatchingSequence(
-      root,
-      tree,
-      node
-    );
+    Optional<Match> matchingSequence = findMatchingSequence(root, tree, node);
     if (matchingSequence.isEmpty()) {
       return;
     }
 
     // If we find a canonical matching sequence for our input sequence, we match elements one at a time
     // until we hit placeholder nodes, and insert those as needed.
-    List<ParseTree> originalChildren = new ArrayList<>(node.getChildren());
+    Set<String> wildcards = wildcardRules.get(root);
+    List<ParseTree> originalChildren = node.getChildren();
     List<ParseTree> newChildren = new ArrayList<>();
-    for (NodeType seqNode : matchingSequence.get().getNodeTypeList()) {
+    int next = 0;
+    for (NodeType seqNode : matchingSequence.get().production.getNodeTypeList()) {
       while (
-        originalChildren.size() > 0 &&
-        root.getWildCardRuleList().contains(originalChildren.get(0).getType())
+        next < originalChildren.size() &&
+        wildcards.contains(originalChildren.get(next).getType())
       ) {
         // These nodes can appear anywhere, so we skip them.
-        newChildren.add(originalChildren.remove(0));
+        newChildren.add(originalChildren.get(next++));
       }
       if (
-        originalChildren.size() > 0 && originalChildren.get(0).getType().equals(seqNode.getName())
+        next < originalChildren.size() &&
+        originalChildren.get(next).getType().equals(seqNode.getName())
       ) {
-        newChildren.add(originalChildren.remove(0));
+        newChildren.add(originalChildren.get(next++));
       } else {
         int start = newChildren.size() > 0
           ? newChildren.get(newChildren.size() - 1).getStop()
@@ -171,13 +191,9 @@ public class PostProcessor {
         .ofNullable(tree.getAliasToRuleMap().get(nodeType.getName()))
         .map(ruleName -> root.getRuleOrThrow(ruleName));
     }
-    Optional<GrammarTree> localChild = tree
-      .getLocalChildList()
-      .stream()
-      .filter(child -> child.getNodeType().equals(nodeType))
-      .findFirst();
-    if (localChild.isPresent()) {
-      return localChild;
+    GrammarTree localChild = rules.get(tree).localChildren.get(nodeType);
+    if (localChild != null) {
+      return Optional.of(localChild);
     }
     return Optional.ofNullable(root.getRuleMap().get(nodeType.getName()));
   }
@@ -185,14 +201,9 @@ public class PostProcessor {
   private Optional<GrammarTree> findChildTree(GrammarRoot root, GrammarTree tree, String name) {
     // Grab the matcher tree when we don't know the type (field vs rule vs alias).
     // If there are duplicated field names, the results here may not be useful.
-    Optional<GrammarTree> localChild = tree
-      .getLocalChildList()
-      .stream()
-      .filter(child -> child.getNodeType().getName().equals(name))
-      .findFirst();
-
-    if (localChild.isPresent()) {
-      return findChildTree(root, tree, localChild.get().getNodeType());
+    NodeType localNodeType = rules.get(tree).localNodeTypes.get(name);
+    if (localNodeType != null) {
+      return findChildTree(root, tree, localNodeType);
     } else if (tree.getAliasToRuleMap().containsKey(name)) {
       return Optional.ofNullable(root.getRuleMap().get(tree.getAliasToRuleMap().get(name)));
     }
@@ -210,39 +221,26 @@ public class PostProcessor {
     }
 
     // Recurse on children first, if any.
-    List<String> unrecursableChildren = new ArrayList<>();
     if (node.getChildren().size() > 0) {
-      List<ParseTree> newChildren = new ArrayList<>();
-
-      Optional<Production> matchingSequence = findMatchingSequence(root, tree, node);
+      Set<String> wildcards = wildcardRules.get(root);
+      Optional<Match> matchingSequence = findMatchingSequence(root, tree, node);
+      Optional<ParseTree> parent = Optional.of(node);
       for (ParseTree child : node.getChildren()) {
         Optional<GrammarTree> childTree;
-        if (matchingSequence.isPresent() && !root.getWildCardRuleList().contains(child.getType())) {
-          // This needs to exist since it's a valid sequence match.
-          childTree =
-            findChildTree(
-              root,
-              tree,
-              matchingSequence
-                .get()
-                .getNodeTypeList()
-                .stream()
-                .filter(t -> t.getName().equals(child.getType()))
-                .findFirst()
-                .get()
-            );
+        NodeType nodeType = matchingSequence.isPresent() && !wildcards.contains(child.getType())
+          ? matchingSequence.get().nodeTypes.get(child.getType())
+          : null;
+        if (nodeType != null) {
+          childTree = findChildTree(root, tree, nodeType);
         } else {
           childTree = findChildTree(root, tree, child.getType());
         }
 
         if (childTree.isPresent()) {
           postProcessNode(root, childTree.get(), child);
-        } else {
-          unrecursableChildren.add(child.getType());
         }
-        newChildren.add(child);
+        child.setParent(parent);
       }
-      node.getChildren().stream().forEach(child -> child.setParent(Optional.of(node)));
     }
 
     mergeConsecutiveFields(root, tree, node);
@@ -280,14 +278,7 @@ public class PostProcessor {
     // <} />
     // In this case, if StatementList are a field, we want to merge into one node (Comment nodes are "invisible").
 
-    Set<String> fieldsToMerge = tree
-      .getLocalChildList()
-      .stream()
-      .filter(
-        child -> Arrays.asList("FIELD", "PLACEHOLDER").contains(child.getNodeType().getType())
-      )
-      .map(child -> child.getNodeType().getName())
-      .collect(Collectors.toSet());
+    Set<String> fieldsToMerge = rules.get(tree).fieldsToMerge;
 
     if (fieldsToMerge.size() == 0 || node.getChildren().size() == 0) {
       return;
@@ -299,7 +290,7 @@ public class PostProcessor {
           : newChildren.get(newChildren.size() - 1).getType();
 
         if (fieldsToMerge.contains(previousChildType)) {
-          if (root.getWildCardRuleList().contains(child.getType())) {
+          if (wildcardRules.get(root).contains(child.getType())) {
             // Comments/preprocessor will break consecutive field merging, so we merge them directly into the previous child.
             newChildren.add(
               appendChildren(newChildren.remove(newChildren.size() - 1), Arrays.asList(child))
@@ -0,0 +1,354 @@
+package core.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A minimized DFA over sequences of child types. Each grammar rule is described by an expression
+ * over the types of its children (e.g., `a b? (c | d)*`), which is compiled into an NFA and then
+ * determinized and minimized, so checking a sequence of children is a walk over the input rather
+ * than a lookup in every expanded sequence.
+ */
+public class SequenceAutomaton {
+
+  // symbols that don't correspond to children in a parse tree.
+  private static final Set<String> ignoredSymbols = Set.of("", "EOF");
+
+  /** A regular expression over child types. */
+  public static class Expression {
+
+    private enum Kind {
+      SYMBOL,
+      SEQUENCE,
+      ALTERNATION,
+      OPTIONAL,
+      STAR,
+      PLUS,
+    }
+
+    private final Kind kind;
+    private final String symbol;
+    private final List<Expression> children;
+
+    private Expression(Kind kind, String symbol, List<Expression> children) {
+      this.kind = kind;
+      this.symbol = symbol;
+      this.children = children;
+    }
+
+    public static Expression symbol(String symbol) {
+      return new Expression(Kind.SYMBOL, symbol, List.of());
+    }
+
+    public static Expression sequence(List<Expression> children) {
+      return new Expression(Kind.SEQUENCE, null, List.copyOf(children));
+    }
+
+    public static Expression alternation(List<Expression> children) {
+      return new Expression(Kind.ALTERNATION, null, List.copyOf(children));
+    }
+
+    public static Expression optional(Expression child) {
+      return new Expression(Kind.OPTIONAL, null, List.of(child));
+    }
+
+    public static Expression star(Expression child) {
+      return new Expression(Kind.STAR, null, List.of(child));
+    }
+
+    public static Expression plus(Expression child) {
+      return new Expression(Kind.PLUS, null, List.of(child));
+    }
+
+    /** The expression that doesn't match any sequence, including the empty one. */
+    public static Expression none() {
+      return alternation(List.of());
+    }
+
+    public Set<String> symbols() {
+      Set<String> result = new LinkedHashSet<>();
+      addSymbols(result);
+      return result;
+    }
+
+    private void addSymbols(Set<String> result) {
+      if (kind == Kind.SYMBOL) {
+        result.add(symbol);
+      }
+
+      for (Expression child : children) {
+        child.addSymbols(result);
+      }
+    }
+
+    /** Replaces each symbol with the expression returned by f. */
+    public Expression map(Function<String, Expression> f) {
+      if (kind == Kind.SYMBOL) {
+        return f.apply(symbol);
+      }
+
+      return new Expression(
+        kind,
+        null,
+        children.stream().map(child -> child.map(f)).collect(Collectors.toUnmodifiableList())
+      );
+    }
+
+    @Override
+    public String toString() {
+      if (kind == Kind.SYMBOL) {
+        return symbol;
+      } else if (kind == Kind.SEQUENCE) {
+        return "(" + children.stream().map(Object::toString).collect(Collectors.joining(" ")) + ")";
+      } else if (kind == Kind.ALTERNATION) {
+        return (
+          "(" + children.stream().map(Object::toString).collect(Collectors.joining(" | ")) + ")"
+        );
+      } else if (kind == Kind.OPTIONAL) {
+        return children.get(0) + "?";
+      } else if (kind == Kind.STAR) {
+        return children.get(0) + "*";
+      }
+
+      return children.get(0) + "+";
+    }
+  }
+
+  private static class Nfa {
+
+    private List<List<Integer>> epsilons = new ArrayList<>();
+    private List<Map<String, List<Integer>>> transitions = new ArrayList<>();
+
+    public int add() {
+      epsilons.add(new ArrayList<>());
+      transitions.add(new HashMap<>());
+      return epsilons.size() - 1;
+    }
+
+    public void epsilon(int from, int to) {
+      epsilons.get(from).add(to);
+    }
+
+    public void transition(int from, String symbol, int to) {
+      transitions.get(from).computeIfAbsent(symbol, s -> new ArrayList<>()).add(to);
+    }
+
+    // adds states matching expression from start, returning the state after the match.
+    public int build(Expression expression, int start) {
+      int end = add();
+      if (expression.kind == Expression.Kind.SYMBOL) {
+        if (ignoredSymbols.contains(expression.symbol)) {
+          epsilon(start, end);
+        } else {
+          transition(start, expression.symbol, end);
+        }
+      } else if (expression.kind == Expression.Kind.SEQUENCE) {
+        int current = start;
+        for (Expression child : expression.children) {
+          current = build(child, current);
+        }
+        epsilon(current, end);
+      } else if (expression.kind == Expression.Kind.ALTERNATION) {
+        for (Expression child : expression.children) {
+          epsilon(build(child, start), end);
+        }
+      } else {
+        // loop through a fresh state, so the repetition can't leak back into start.
+        int loop = add();
+        epsilon(start, loop);
+        int after = build(expression.children.get(0), loop);
+        if (expression.kind != Expression.Kind.OPTIONAL) {
+          epsilon(after, loop);
+        }
+        if (expression.kind != Expression.Kind.PLUS) {
+          epsilon(loop, end);
+        }
+        epsilon(after, end);
+      }
+
+      return end;
+    }
+
+    public BitSet closure(BitSet states) {
+      BitSet result = (BitSet) states.clone();
+      Deque<Integer> queue = new ArrayDeque<>();
+      states.stream().forEach(queue::add);
+      while (!queue.isEmpty()) {
+        for (int next : epsilons.get(queue.pop())) {
+          if (!result.get(next)) {
+            result.set(next);
+            queue.add(next);
+          }
+        }
+      }
+
+      return result;
+    }
+  }
+
+  private final List<Map<String, Integer>> transitions;
+  private final boolean[] accepting;
+
+  private SequenceAutomaton(List<Map<String, Integer>> transitions, boolean[] accepting) {
+    this.transitions = transitions;
+    this.accepting = accepting;
+  }
+
+  public static SequenceAutomaton compile(Expression expression) {
+    return compile(expression, true);
+  }
+
+  static SequenceAutomaton compile(Expression expression, boolean minimize) {
+    Nfa nfa = new Nfa();
+    int start = nfa.add();
+    int end = nfa.build(expression, start);
+
+    // subset construction, where each DFA state is the closure of a set of NFA states.
+    List<Map<String, Integer>> transitions = new ArrayList<>();
+    List<Boolean> accepting = new ArrayList<>();
+    Map<BitSet, Integer> states = new HashMap<>();
+    List<BitSet> queue = new ArrayList<>();
+    BitSet initial = new BitSet();
+    initial.set(start);
+    initial = nfa.closure(initial);
+    states.put(initial, 0);
+    queue.add(initial);
+    for (int i = 0; i < queue.size(); i++) {
+      BitSet current = queue.get(i);
+      Map<String, BitSet> targets = new HashMap<>();
+      current
+        .stream()
+        .forEach(
+          state ->
+            nfa.transitions
+              .get(state)
+              .forEach(
+                (symbol, to) -> {
+                  BitSet target = targets.computeIfAbsent(symbol, s -> new BitSet());
+                  to.forEach(target::set);
+                }
+              )
+        );
+
+      Map<String, Integer> edges = new HashMap<>();
+      for (Map.Entry<String, BitSet> entry : targets.entrySet()) {
+        BitSet target = nfa.closure(entry.getValue());
+        Integer index = states.get(target);
+        if (index == null) {
+          index = queue.size();
+          states.put(target, index);
+          queue.add(target);
+        }
+        edges.put(entry.getKey(), index);
+      }
+
+      transitions.add(edges);
+      accepting.add(current.get(end));
+    }
+
+    boolean[] result = new boolean[accepting.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = accepting.get(i);
+    }
+
+    return minimize ? minimize(transitions, result) : new SequenceAutomaton(transitions, result);
+  }
+
+  private static SequenceAutomaton minimize(
+    List<Map<String, Integer>> transitions,
+    boolean[] accepting
+  ) {
+    // moore's algorithm: start with accepting and rejecting states, then split any class whose
+    // states go to different classes on some symbol until nothing changes.
+    int[] classes = new int[accepting.length];
+    for (int i = 0; i < classes.length; i++) {
+      classes[i] = accepting[i] ? 1 : 0;
+    }
+
+    int count = -1;
+    while (true) {
+      Map<List<Object>, Integer> signatures = new HashMap<>();
+      int[] next = new int[classes.length];
+      for (int i = 0; i < classes.length; i++) {
+        Map<String, Integer> targets = new HashMap<>();
+        for (Map.Entry<String, Integer> edge : transitions.get(i).entrySet()) {
+          targets.put(edge.getKey(), classes[edge.getValue()]);
+        }
+
+        List<Object> signature = List.of(classes[i], targets);
+        Integer index = signatures.get(signature);
+        if (index == null) {
+          index = signatures.size();
+          signatures.put(signature, index);
+        }
+        next[i] = index;
+      }
+
+      classes = next;
+      if (signatures.size() == count) {
+        break;
+      }
+      count = signatures.size();
+    }
+
+    // classes are numbered in order of first appearance, so the start state stays at 0.
+    List<Map<String, Integer>> minimizedTransitions = new ArrayList<>();
+    boolean[] minimizedAccepting = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      minimizedTransitions.add(null);
+    }
+    for (int i = 0; i < classes.length; i++) {
+      if (minimizedTransitions.get(classes[i]) == null) {
+        Map<String, Integer> edges = new HashMap<>();
+        for (Map.Entry<String, Integer> edge : transitions.get(i).entrySet()) {
+          edges.put(edge.getKey(), classes[edge.getValue()]);
+        }
+        minimizedTransitions.set(classes[i], edges);
+        minimizedAccepting[classes[i]] = accepting[i];
+      }
+    }
+
+    return new SequenceAutomaton(minimizedTransitions, minimizedAccepting);
+  }
+
+  public boolean accepts(List<String> input) {
+    int state = 0;
+    for (String symbol : input) {
+      Integer next = transitions.get(state).get(symbol);
+      if (next == null) {
+        return false;
+      }
+      state = next;
+    }
+
+    return accepting[state];
+  }
+
+  public int size() {
+    return accepting.length;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < accepting.length; i++) {
+      result
+        .append(i)
+        .append(accepting[i] ? " (accepting)" : "")
+        .append(": ")
+        .append(transitions.get(i))
+        .append("\n");
+    }
+
+    return result.toString();
+  }
+}
@@ -7,8 +7,17 @@ import java.util.List;
 
 public class RawSelectionContext extends SelectionContext<Range> {
 
+  // The lines that regex selectors search, which is the whole source unless SelectorMap has
+  // narrowed it to the lines around the cursor.
+  public final Range window;
+
   public RawSelectionContext(String source, Integer cursor, Selection selection) {
+    this(source, cursor, selection, new Range(0, source.length()));
+  }
+
+  public RawSelectionContext(String source, Integer cursor, Selection selection, Range window) {
     super(source, cursor, selection);
+    this.window = window;
   }
 
   public Range closestLocation(ClosestObjectFinder closestObjectFinder, List<Range> locations) {
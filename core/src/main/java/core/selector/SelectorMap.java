@@ -1,6 +1,9 @@
 package core.selector;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import core.ast.Ast;
+import core.ast.AstFactory;
 import core.ast.api.AstNode;
 import core.ast.api.DefaultAstParent;
 import core.closeness.ClosestObjectFinder;
@@ -15,15 +18,20 @@ import core.util.ObjectType;
 import core.util.Range;
 import core.util.RangeSorter;
 import core.util.SearchDirection;
+import core.util.SourceIndex;
 import core.util.TextStyle;
 import core.util.TextStyler;
 import core.util.Whitespace;
+import core.util.WordIndex;
 import core.util.selection.Selection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -35,10 +43,28 @@ import javax.inject.Inject;
 
 public abstract class SelectorMap implements LanguageSpecific {
 
+  private interface WindowCovered {
+    boolean test(RawSelectionContext window, List<Range> locations, int margin);
+  }
+
+  private static class PhrasePattern {
+
+    public final Pattern pattern;
+    public final Optional<List<String>> anchors;
+
+    public PhrasePattern(Pattern pattern, Optional<List<String>> anchors) {
+      this.pattern = pattern;
+      this.anchors = anchors;
+    }
+  }
+
   public abstract Language language();
 
   protected abstract Map<ObjectType, Function<AstSelectionContext, Stream<AstNode>>> languageAstSelectors();
 
+  @Inject
+  AstFactory astFactory;
+
   @Inject
   ClosestObjectFinder closestObjectFinder;
 
@@ -60,10 +86,36 @@ public abstract class SelectorMap implements LanguageSpecific {
   @Inject
   Whitespace whitespace;
 
+  // building a phrase pattern styles every word and looks up symbols, so compile each phrase once.
+  private Cache<String, PhrasePattern> phrasePatterns = CacheBuilder
+    .newBuilder()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
+  // matches of each phrase, keyed on the source string itself like AstFactory.sourceIndex, so
+  // searching for a phrase again in the same source (e.g., when Selector falls back to a phrase
+  // because an object is too far away) doesn't scan it again.
+  private Cache<String, Map<String, List<Range>>> phraseMatches = CacheBuilder
+    .newBuilder()
+    .weakKeys()
+    .maximumSize(100)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
   public Function<RawSelectionContext, Stream<Range>> lineRanges = regexMatch(".*");
   public Map<ObjectType, Function<RawSelectionContext, Stream<Range>>> rawSelectors = new HashMap<>();
   public Map<ObjectType, Function<AstSelectionContext, Stream<AstNode>>> astSelectors = new HashMap<>();
 
+  /**
+   * Whether to scan the whole source rather than narrowing searches to windows around the cursor
+   * or to where the word index says a phrase could be. Only tests override this, to check that
+   * narrowing doesn't change what's found.
+   */
+  protected boolean searchWholeSource() {
+    return false;
+  }
+
   protected void initialize() {
     initializeRawSelectors();
     initializeAstSelectors();
@@ -111,8 +163,9 @@ public abstract class SelectorMap implements LanguageSpecific {
   }
 
   private Stream<Range> characterRanges(RawSelectionContext ctx) {
-    int start = whitespace.lineNonWhitespaceStart(ctx.source, ctx.cursor);
-    int size = whitespace.lineEnd(ctx.source, ctx.cursor) - start;
+    SourceIndex index = astFactory.sourceIndex(ctx.source);
+    int start = index.lineNonWhitespaceStart(ctx.cursor);
+    int size = index.lineEnd(ctx.cursor) - start;
     Range range = ctx.selection.absoluteRange
       .map(r -> resolveNegativeIndices(r, size))
       .map(absoluteRange -> new Range(start + absoluteRange.start, start + absoluteRange.stop))
@@ -177,6 +230,64 @@ public abstract class SelectorMap implements LanguageSpecific {
     );
   }
 
+  // the lowercase words that every match of the phrase pattern starts with one of, or empty if a
+  // match could start with something else (e.g., a symbol), in which case the source is scanned.
+  private Optional<List<String>> phraseAnchors(String text) {
+    List<String> split = Arrays.asList(numberConverter.convertNumbers(text).split(" "));
+    for (int j = 0; j <= split.size(); j++) {
+      if (conversionMap.symbolMap.containsKey(split.subList(0, j))) {
+        return Optional.empty();
+      }
+    }
+
+    // every style of the first word has to be the same word ignoring case.
+    String first = split.get(0);
+    if (
+      !first.toLowerCase().matches("[0-9a-z]+") ||
+      !Stream
+        .of(TextStyle.values())
+        .allMatch(style -> textStyler.style(first, style).equalsIgnoreCase(first))
+    ) {
+      return Optional.empty();
+    }
+
+    // the default formatting has to start with a word too.
+    String formatted = formattedTextConverter.convert(
+      text,
+      FormattedTextOptions.newBuilder().setExpression(false).build(),
+      language()
+    );
+    int formattedWordEnd = 0;
+    while (
+      formattedWordEnd < formatted.length() &&
+      WordIndex.isWordCharacter(formatted.charAt(formattedWordEnd))
+    ) {
+      formattedWordEnd++;
+    }
+    if (formattedWordEnd == 0) {
+      return Optional.empty();
+    }
+
+    return Optional.of(
+      Arrays.asList(first.toLowerCase(), formatted.substring(0, formattedWordEnd).toLowerCase())
+    );
+  }
+
+  private PhrasePattern phrasePatternWithAnchors(String text) {
+    try {
+      return phrasePatterns.get(
+        text,
+        () -> new PhrasePattern(Pattern.compile(phraseSearchPattern(text)), phraseAnchors(text))
+      );
+    } catch (Exception e) {
+      throw new RuntimeException("Phrase pattern error", e);
+    }
+  }
+
+  private Pattern phrasePattern(String text) {
+    return phrasePatternWithAnchors(text).pattern;
+  }
+
   private int minimumSharedWithReferencePoint(Selection selection) {
     // minimum context size to handle both negative and positive indices.
     return selection.absoluteRange
@@ -199,6 +310,28 @@ public abstract class SelectorMap implements LanguageSpecific {
     return referencePointToLocations;
   }
 
+  private <T, S extends SelectionContext<T>> boolean prefersExactMatches(S ctx) {
+    return ctx.selection.object != ObjectType.PHRASE && ctx.selection.name.isPresent();
+  }
+
+  private <T, S extends SelectionContext<T>> List<T> exactMatches(S ctx, List<T> locations) {
+    return locations
+      .stream()
+      .filter(e -> textStyler.toLowerCase(ctx.nameString(e)).equals(ctx.selection.name.get()))
+      .collect(Collectors.toList());
+  }
+
+  private <T, S extends SelectionContext<T>> T closestLocation(S ctx, List<T> locations) {
+    if (prefersExactMatches(ctx)) {
+      List<T> exactMatches = exactMatches(ctx, locations);
+      if (exactMatches.size() > 0) {
+        return ctx.closestLocation(closestObjectFinder, exactMatches);
+      }
+    }
+
+    return ctx.closestLocation(closestObjectFinder, locations);
+  }
+
   private Range resolveNegativeIndices(Range absoluteRange, int length) {
     return new Range(
       absoluteRange.start < 0 ? length + absoluteRange.start : absoluteRange.start,
@@ -241,22 +374,7 @@ public abstract class SelectorMap implements LanguageSpecific {
         .map(range -> resolveNegativeIndices(range, locationList.size()))
         .orElseGet(
           () -> {
-            T bestMatch;
-            if (ctx.selection.object != ObjectType.PHRASE && ctx.selection.name.isPresent()) {
-              List<T> exactMatches = locationList
-                .stream()
-                .filter(
-                  e -> textStyler.toLowerCase(ctx.nameString(e)).equals(ctx.selection.name.get())
-                )
-                .collect(Collectors.toList());
-              if (exactMatches.size() > 0) {
-                bestMatch = ctx.closestLocation(closestObjectFinder, exactMatches);
-              } else {
-                bestMatch = ctx.closestLocation(closestObjectFinder, locationList);
-              }
-            } else {
-              bestMatch = ctx.closestLocation(closestObjectFinder, locationList);
-            }
+            T bestMatch = closestLocation(ctx, locationList);
             int index = locationList.indexOf(bestMatch);
             return relativeRange(index, ctx.selection, ctx.closestLocationDirection(bestMatch));
           }
@@ -450,23 +568,25 @@ public abstract class SelectorMap implements LanguageSpecific {
     rawSelectors.put(ObjectType.ALL, ctx -> Stream.<Range>of(new Range(0, ctx.source.length())));
     rawSelectors.put(ObjectType.BLOCK, this::blockRanges);
     rawSelectors.put(ObjectType.FILE, ctx -> Stream.<Range>of(new Range(0, ctx.source.length())));
-    rawSelectors.put(ObjectType.LINE, this.lineRanges);
+    rawSelectors.put(ObjectType.LINE, lineScoped(this.lineRanges));
     rawSelectors.put(
       ObjectType.NUMBER,
-      filterByLine(
-        regexMatch("([0-9]+\\.[0-9]+)[^\\.[0-9]]|([0-9]+)", this::numberStart, this::numberEnd)
+      lineScoped(
+        filterByLine(
+          regexMatch("([0-9]+\\.[0-9]+)[^\\.[0-9]]|([0-9]+)", this::numberStart, this::numberEnd)
+        )
       )
     );
     rawSelectors.put(ObjectType.PHRASE, this::phraseRanges);
-    rawSelectors.put(ObjectType.VERTICAL, this::verticalRanges);
-    rawSelectors.put(ObjectType.TERM, filterByLine(regexMatch("[^\\s]+")));
+    rawSelectors.put(ObjectType.VERTICAL, lineScoped(this::verticalRanges));
+    rawSelectors.put(ObjectType.TERM, lineScoped(filterByLine(regexMatch("[^\\s]+"))));
     rawSelectors.put(
       ObjectType.SYMBOL,
-      filterByName(filterByLine(regexMatch("[^\\sa-zA-Z0-9_]+")))
+      lineScoped(filterByName(filterByLine(regexMatch("[^\\sa-zA-Z0-9_]+"))))
     );
     rawSelectors.put(
       ObjectType.WORD,
-      filterByName(filterByLine(regexMatch("[a-zA-Z0-9_]+|[^\\sa-zA-Z0-9_]+")))
+      lineScoped(filterByName(filterByLine(regexMatch("[a-zA-Z0-9_]+|[^\\sa-zA-Z0-9_]+"))))
     );
     rawSelectors = applyIndexing(rawSelectors);
 
@@ -479,15 +599,34 @@ public abstract class SelectorMap implements LanguageSpecific {
   protected Function<RawSelectionContext, Stream<Range>> filterByLine(
     Function<RawSelectionContext, Stream<Range>> ranges
   ) {
-    return filterBySharedReferencePoint(
+    Function<RawSelectionContext, Stream<Range>> filtered = filterBySharedReferencePoint(
       (ctx, range) -> {
-        int position = range.start;
-        int start = whitespace.lineStart(ctx.source, position);
-        int stop = whitespace.lineEnd(ctx.source, position);
-        return new Range(start, stop);
+        SourceIndex index = astFactory.sourceIndex(ctx.source);
+        return new Range(index.lineStart(range.start), index.lineEnd(range.start));
       },
       ranges
     );
+
+    return ctx -> {
+      // without an absolute index, ranges aren't filtered by line, and with a direction, the line
+      // depends on every other line that has enough ranges.
+      if (
+        ctx.selection.absoluteRange.isEmpty() || ctx.selection.direction != SearchDirection.NONE
+      ) {
+        return filtered.apply(ctx);
+      }
+
+      // the closest line with enough ranges is the same as in the whole source if nothing outside
+      // of the window could be closer.
+      SourceIndex index = astFactory.sourceIndex(ctx.source);
+      int cursorLine = index.line(Math.min(ctx.cursor, ctx.source.length()));
+      return searchOutwards(
+        ctx,
+        filtered,
+        (window, result, margin) ->
+          result.size() > 0 && Math.abs(index.line(result.get(0).start) - cursorLine) <= margin
+      );
+    };
   }
 
   protected <T, S extends SelectionContext<T>> Function<S, Stream<T>> filterByName(
@@ -496,7 +635,7 @@ public abstract class SelectorMap implements LanguageSpecific {
     return ctx -> {
       Stream<T> locationStream = locations.apply(ctx);
       if (ctx.selection.name.isPresent()) {
-        Pattern pattern = Pattern.compile(phraseSearchPattern(ctx.selection.name.get()));
+        Pattern pattern = phrasePattern(ctx.selection.name.get());
         locationStream = locationStream.filter(e -> pattern.matcher(ctx.nameString(e)).find());
       }
 
@@ -601,6 +740,94 @@ public abstract class SelectorMap implements LanguageSpecific {
     return m;
   }
 
+  /**
+   * Evaluates a raw selector over the lines around the cursor rather than the whole source, so
+   * that relative selections like "next word" are proportional to the size of a line rather than
+   * the file. Each location has to be on a single line.
+   */
+  protected Function<RawSelectionContext, Stream<Range>> lineScoped(
+    Function<RawSelectionContext, Stream<Range>> locations
+  ) {
+    return ctx -> {
+      // absolute indexes count from the start of the file, unless filterByLine groups them.
+      if (ctx.selection.absoluteRange.isPresent()) {
+        return locations.apply(ctx);
+      }
+
+      // the window has to contain the closest location, which is the same as in the whole source
+      // if nothing outside of the window could be closer, and every location the selection's
+      // direction, offset, and count would index from there.
+      SourceIndex index = astFactory.sourceIndex(ctx.source);
+      int cursorLine = index.line(Math.min(ctx.cursor, ctx.source.length()));
+      return searchOutwards(
+        ctx,
+        locations,
+        (window, result, margin) -> {
+          if (result.size() == 0) {
+            return false;
+          } else if (prefersExactMatches(window) && exactMatches(window, result).size() == 0) {
+            return false;
+          }
+
+          Range closest = closestLocation(window, result);
+          if (Math.abs(index.line(closest.start) - cursorLine) > margin) {
+            return false;
+          }
+
+          Range positions = relativeRange(
+            result.indexOf(closest),
+            window.selection,
+            window.closestLocationDirection(closest)
+          );
+          return (
+            (positions.start >= 0 || window.window.start == 0) &&
+            (positions.stop <= result.size() || window.window.stop == window.source.length())
+          );
+        }
+      );
+    };
+  }
+
+  /**
+   * Applies locations to windows of lines centered on the cursor, doubling in size, until covered
+   * accepts the result or the window contains the whole source. Covered is given the number of
+   * lines on either side of the cursor line that the window is known to contain.
+   */
+  private Stream<Range> searchOutwards(
+    RawSelectionContext ctx,
+    Function<RawSelectionContext, Stream<Range>> locations,
+    WindowCovered covered
+  ) {
+    if (searchWholeSource()) {
+      return locations.apply(ctx);
+    }
+
+    SourceIndex index = astFactory.sourceIndex(ctx.source);
+    int cursorLine = index.line(Math.min(ctx.cursor, ctx.source.length()));
+    int lastLine = index.lineCount() - 1;
+    for (int radius = 1; cursorLine - radius > 0 || cursorLine + radius < lastLine; radius *= 2) {
+      int first = Math.max(0, cursorLine - radius);
+      int last = Math.min(lastLine, cursorLine + radius);
+      RawSelectionContext window = new RawSelectionContext(
+        ctx.source,
+        ctx.cursor,
+        ctx.selection,
+        index.lines(first, last)
+      );
+
+      List<Range> result = locations.apply(window).collect(Collectors.toList());
+      int margin = Math.min(
+        first == 0 ? Integer.MAX_VALUE : cursorLine - first,
+        last == lastLine ? Integer.MAX_VALUE : last - cursorLine
+      );
+      if (covered.test(window, result, margin)) {
+        return result.stream();
+      }
+    }
+
+    return locations.apply(ctx);
+  }
+
   protected Function<AstSelectionContext, Stream<AstNode>> instanceMatch(
     Class<? extends AstNode> type
   ) {
@@ -625,9 +852,69 @@ public abstract class SelectorMap implements LanguageSpecific {
     return start;
   }
 
+  // the same matches as regexMatch over the whole source, but only trying the positions where one
+  // of the anchors appears, which includes the start of every match.
+  private List<Range> indexedPhraseMatches(String source, PhrasePattern phrase) {
+    WordIndex index = astFactory.wordIndex(source);
+    int[] positions = phrase.anchors
+      .get()
+      .stream()
+      .flatMapToInt(anchor -> Arrays.stream(index.positions(anchor)))
+      .sorted()
+      .distinct()
+      .toArray();
+
+    List<Range> ranges = new ArrayList<>();
+    Matcher m = phrase.pattern.matcher(source).useTransparentBounds(true).useAnchoringBounds(false);
+    int nextIndex = 0;
+    for (int position : positions) {
+      if (position < nextIndex) {
+        continue;
+      }
+
+      m.region(position, source.length());
+      if (!m.lookingAt()) {
+        continue;
+      }
+
+      ranges.add(new Range(m.start(), m.end()));
+      nextIndex = m.end();
+      if (nextIndex < source.length() && source.charAt(nextIndex) == '\n') {
+        nextIndex++;
+      }
+    }
+
+    return ranges;
+  }
+
   protected Stream<Range> phraseRanges(RawSelectionContext ctx) {
     // we should never create a phrase selection without the text field.
-    return regexMatch(phraseSearchPattern(ctx.selection.name.get())).apply(ctx);
+    String text = ctx.selection.name.get();
+    PhrasePattern phrase = phrasePatternWithAnchors(text);
+    if (ctx.window.start != 0 || ctx.window.stop != ctx.source.length()) {
+      return regexMatch(phrase.pattern, m -> m.start(), m -> m.end()).apply(ctx);
+    }
+
+    Map<String, List<Range>> matches;
+    try {
+      matches = phraseMatches.get(ctx.source, () -> new ConcurrentHashMap<>());
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+
+    // callers can modify the ranges they're given, so hand out copies of the cached ones.
+    return matches
+      .computeIfAbsent(
+        text,
+        t ->
+          !searchWholeSource() && phrase.anchors.isPresent()
+            ? List.copyOf(indexedPhraseMatches(ctx.source, phrase))
+            : regexMatch(phrase.pattern, m -> m.start(), m -> m.end())
+              .apply(ctx)
+              .collect(Collectors.toUnmodifiableList())
+      )
+      .stream()
+      .map(Range::new);
   }
 
   protected Function<AstSelectionContext, Stream<AstNode>> predicateMatch(
@@ -732,18 +1019,33 @@ public abstract class SelectorMap implements LanguageSpecific {
     Function<Matcher, Integer> start,
     Function<Matcher, Integer> end
   ) {
-    Pattern p = Pattern.compile(pattern);
+    return regexMatch(Pattern.compile(pattern), start, end);
+  }
+
+  protected Function<RawSelectionContext, Stream<Range>> regexMatch(
+    Pattern p,
+    Function<Matcher, Integer> start,
+    Function<Matcher, Integer> end
+  ) {
     return ctx -> {
+      // search the lines in the window along with the newline after them, since a match can
+      // depend on the character after it.
+      int offset = ctx.window.start;
+      String source = ctx.source.substring(
+        offset,
+        Math.min(ctx.source.length(), ctx.window.stop + 1)
+      );
+
       List<Range> ranges = new ArrayList<>();
-      Matcher m = p.matcher(ctx.source);
+      Matcher m = p.matcher(source);
       int nextIndex = 0;
-      while (m.find(nextIndex)) {
-        ranges.add(new Range(start.apply(m), end.apply(m)));
+      while (m.find(nextIndex) && offset + start.apply(m) <= ctx.window.stop) {
+        ranges.add(new Range(offset + start.apply(m), offset + end.apply(m)));
         nextIndex = end.apply(m);
-        if (nextIndex >= ctx.source.length()) {
+        if (nextIndex >= source.length()) {
           break;
         }
-        if (nextIndex < ctx.source.length() && ctx.source.charAt(nextIndex) == '\n') {
+        if (nextIndex < source.length() && source.charAt(nextIndex) == '\n') {
           nextIndex++;
         }
       }
@@ -753,7 +1055,7 @@ public abstract class SelectorMap implements LanguageSpecific {
   }
 
   protected Stream<Range> verticalRanges(RawSelectionContext ctx) {
-    int vertical = ctx.cursor - whitespace.lineStart(ctx.source, ctx.cursor);
+    int vertical = ctx.cursor - astFactory.sourceIndex(ctx.source).lineStart(ctx.cursor);
     return lineRanges
       .apply(ctx)
       .map(
@@ -19,7 +19,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import toolbelt.logging.Logs;
 import toolbelt.server.ApiErrorHandler;
-import toolbelt.server.StatusServlet;
 
 @Singleton
 public class CoreServer {
@@ -38,7 +37,7 @@ public class CoreServer {
   LogResponseServlet logResponseServlet;
 
   @Inject
-  StatusServlet statusServlet;
+  CoreStatusServlet statusServlet;
 
   @Inject
   StreamManager.Factory streamManagerFactory;
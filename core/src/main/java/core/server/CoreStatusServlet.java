@@ -0,0 +1,22 @@
+package core.server;
+
+import core.ast.AstFactory;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import toolbelt.server.StatusServlet;
+
+@Singleton
+public class CoreStatusServlet extends StatusServlet {
+
+  @Inject
+  AstFactory astFactory;
+
+  @Inject
+  public CoreStatusServlet() {}
+
+  @Override
+  protected Map<String, Object> details() {
+    return Map.of("astCache", astFactory.cacheStats());
+  }
+}
@@ -8,7 +8,6 @@ import core.util.CommandLogger;
 import dagger.assisted.Assisted;
 import dagger.assisted.AssistedFactory;
 import dagger.assisted.AssistedInject;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
@@ -19,6 +18,7 @@ import java.util.Optional;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.websocket.ContainerProvider;
 import javax.websocket.DeploymentException;
 import javax.websocket.Session;
@@ -42,13 +42,17 @@ public class AudioManager {
   private final int maximumAudioSize = 16000 * 2 * 10;
   private Logger logger = LoggerFactory.getLogger(AudioManager.class);
 
-  private ByteArrayOutputStream currentCommandAudio = new ByteArrayOutputStream();
-  private ByteArrayOutputStream currentChunkAudio = new ByteArrayOutputStream();
+  // audio is kept as the ByteStrings it arrived in, which concat joins without copying. volatile,
+  // since the queue is advanced from the speech engine socket as well as the session.
+  private volatile ByteString currentCommandAudio = ByteString.EMPTY;
+  private volatile ByteString currentChunkAudio = ByteString.EMPTY;
   private List<String> currentCommandChunkIds = new ArrayList<>();
   private Optional<EndpointRequest> endpointInProgress = Optional.empty();
   private AlternativesResponse lastAlternativesResponse;
   private List<String> previousCommandChunkIds = new ArrayList<>();
   private ConcurrentLinkedQueue<EvaluateRequest> queue = new ConcurrentLinkedQueue<>();
+  // the number of endpoint requests in the queue, so it doesn't need to be scanned for them.
+  private AtomicInteger queuedEndpointRequests = new AtomicInteger();
   private Optional<Session> websocket = Optional.empty();
 
   private CommandLogger commandLogger;
@@ -95,7 +99,7 @@ public class AudioManager {
         .setAudioRequest(
           AudioRequest
             .newBuilder()
-            .setAudio(ByteString.copyFrom(currentCommandAudio.toByteArray()))
+            .setAudio(currentCommandAudio)
             .build()
         )
         .build()
@@ -175,22 +179,20 @@ public class AudioManager {
         commandLogger.logAudio(chunkId, state.getToken(), currentChunkAudio.toByteArray(), false);
       }
 
-      currentChunkAudio.reset();
+      currentChunkAudio = ByteString.EMPTY;
     }
 
     if (!currentCommandChunkIds.contains(chunkId)) {
       currentCommandChunkIds.add(chunkId);
     }
 
+    queuedEndpointRequests.incrementAndGet();
     queue.add(request);
     advanceQueue();
   }
 
   public void processAudio(EvaluateRequest request) {
-    try {
-      currentChunkAudio.write(request.getAudioRequest().getAudio().toByteArray());
-    } catch (IOException e) {}
-
+    currentChunkAudio = currentChunkAudio.concat(request.getAudioRequest().getAudio());
     queue.add(request);
     advanceQueue();
   }
@@ -212,12 +214,10 @@ public class AudioManager {
                 .setAudioRequest(AudioRequest.newBuilder().setAudio(audio).build())
                 .build()
             );
-            try {
-              currentCommandAudio.write(audio.toByteArray());
-            } catch (IOException e) {}
+            currentCommandAudio = currentCommandAudio.concat(audio);
           }
         } else if (
-          request.hasEndpointRequest() && queue.stream().noneMatch(e -> e.hasEndpointRequest())
+          request.hasEndpointRequest() && queuedEndpointRequests.decrementAndGet() == 0
         ) {
           EndpointRequest endpointRequest = request.getEndpointRequest();
           endpointInProgress = Optional.of(endpointRequest);
@@ -244,8 +244,8 @@ public class AudioManager {
 
   public void resetTranscriptionState() {
     currentCommandChunkIds.clear();
-    currentCommandAudio.reset();
-    currentChunkAudio.reset();
+    currentCommandAudio = ByteString.EMPTY;
+    currentChunkAudio = ByteString.EMPTY;
     endpointInProgress = Optional.empty();
     lastAlternativesResponse = AlternativesResponse.newBuilder().build();
   }
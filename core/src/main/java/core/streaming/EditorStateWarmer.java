@@ -0,0 +1,125 @@
+package core.streaming;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import core.ast.AstFactory;
+import core.ast.api.AstNode;
+import core.ast.api.AstParent;
+import core.gen.rpc.Language;
+import core.metadata.EditorStateWithMetadata;
+import core.util.PhraseHintExtractor;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import toolbelt.logging.Logs;
+
+/**
+ * Does the work that evaluating a command needs from the editor state (indexing lines, parsing the
+ * source, and extracting phrase hints) as soon as the state changes, rather than after the user
+ * stops talking. Only the latest state for each session is warmed, so work for a stale state is
+ * dropped.
+ */
+@Singleton
+public class EditorStateWarmer {
+
+  private class Warmup {
+
+    public final List<Object> key;
+    public Future<?> future;
+
+    public Warmup(List<Object> key) {
+      this.key = key;
+    }
+  }
+
+  private Logger logger = LoggerFactory.getLogger(EditorStateWarmer.class);
+  private ExecutorService executor = Executors.newFixedThreadPool(
+    Math.max(1, Runtime.getRuntime().availableProcessors() / 2)
+  );
+  private Cache<String, Warmup> sessions = CacheBuilder
+    .newBuilder()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
+  @Inject
+  AstFactory astFactory;
+
+  @Inject
+  PhraseHintExtractor phraseHintExtractor;
+
+  @Inject
+  public EditorStateWarmer() {}
+
+  private boolean isCurrent(String session, Warmup warmup) {
+    return sessions.getIfPresent(session) == warmup;
+  }
+
+  private void run(EditorStateWithMetadata state, Warmup warmup) {
+    String session = state.getSessionKey();
+    Logs.logTime(
+      logger,
+      "core.warm-editor-state",
+      Map.of("language", state.getLanguage()),
+      () -> {
+        if (isCurrent(session, warmup)) {
+          // the index is cached by the source string itself, so requests with this state reuse it.
+          astFactory.sourceIndex(state.getSource());
+          phraseHintExtractor.extract(state.getSource(), state.getCustomHints());
+        }
+
+        if (!isCurrent(session, warmup) || state.getLanguage() == Language.LANGUAGE_DEFAULT) {
+          return;
+        }
+
+        try {
+          AstParent root = astFactory.createImmutableFileRoot(
+            session,
+            state.getSource(),
+            state.getLanguage()
+          );
+
+          // cached roots already have their token positions, but searching from the root builds
+          // the tree's node index (under the tree's lock), so selectors on this root don't have to.
+          if (isCurrent(session, warmup)) {
+            root.find(AstNode.class).findFirst();
+          }
+        } catch (RuntimeException e) {
+          // parse errors are raised to the user by the commands that need the tree.
+        }
+      }
+    );
+  }
+
+  public void warm(EditorStateWithMetadata state) {
+    String session = state.getSessionKey();
+    List<Object> key = List.of(
+      state.getSource(),
+      state.getLanguage(),
+      state.getCustomHints()
+    );
+
+    Warmup warmup;
+    synchronized (this) {
+      Warmup previous = sessions.getIfPresent(session);
+      if (previous != null && previous.key.equals(key)) {
+        return;
+      }
+
+      if (previous != null) {
+        previous.future.cancel(false);
+      }
+
+      warmup = new Warmup(key);
+      sessions.put(session, warmup);
+      warmup.future = executor.submit(() -> run(state, warmup));
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package core.streaming;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import toolbelt.logging.Logs;
+
+/**
+ * Runs the work for every streaming session on a shared, bounded pool of threads. Each session
+ * gets a mailbox that runs its tasks one at a time in the order they were added, so a session's
+ * state is never touched by two threads at once, and a slow session only holds one pool thread
+ * rather than the websocket threads or other sessions' work. Work that waits on something else,
+ * like evaluations waiting on the code engine, runs on a separate bounded pool instead and posts
+ * its results back to the mailbox, so the session's other tasks (e.g., audio) keep running.
+ */
+@Singleton
+public class SessionScheduler {
+
+  private static class Task {
+
+    public final Optional<Object> key;
+    public final boolean coalesce;
+    public final Runnable runnable;
+
+    public Task(Optional<Object> key, boolean coalesce, Runnable runnable) {
+      this.key = key;
+      this.coalesce = coalesce;
+      this.runnable = runnable;
+    }
+  }
+
+  public class Mailbox implements Executor {
+
+    private final String name;
+    private Deque<Task> pending = new ArrayDeque<>();
+    private boolean running = false;
+    private boolean closed = false;
+
+    public Mailbox(String name) {
+      this.name = name;
+    }
+
+    private void add(Task task) {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+
+        if (task.coalesce) {
+          Task last = pending.peekLast();
+          if (last != null && last.coalesce && last.key.equals(task.key)) {
+            pending.removeLast();
+          }
+        } else if (task.key.isPresent()) {
+          Iterator<Task> iterator = pending.iterator();
+          while (iterator.hasNext()) {
+            Task other = iterator.next();
+            if (!other.coalesce && other.key.equals(task.key)) {
+              iterator.remove();
+            }
+          }
+        }
+
+        if (pending.size() >= maxPendingTasks) {
+          throw new RejectedExecutionException(
+            "Session " + name + " has " + pending.size() + " pending tasks"
+          );
+        }
+
+        pending.add(task);
+        if (running) {
+          return;
+        }
+        running = true;
+      }
+
+      executor.execute(this::runNext);
+    }
+
+    // run a single task per turn on the pool, so a busy session doesn't keep a thread from others.
+    private void runNext() {
+      Task task;
+      synchronized (this) {
+        task = pending.poll();
+        if (task == null) {
+          running = false;
+          return;
+        }
+      }
+
+      try {
+        task.runnable.run();
+      } catch (RuntimeException e) {
+        Logs.logError(logger, "Uncaught session task exception", e);
+      }
+
+      synchronized (this) {
+        if (pending.isEmpty()) {
+          running = false;
+          return;
+        }
+      }
+
+      executor.execute(this::runNext);
+    }
+
+    /** Adds a task to run after every task already added. */
+    @Override
+    public void execute(Runnable runnable) {
+      add(new Task(Optional.empty(), false, runnable));
+    }
+
+    /**
+     * Adds a task that replaces the most recently added task if it's still pending and has the same
+     * key, since only the latest of a run of those (e.g., editor states) matters.
+     */
+    public void executeCoalescing(Object key, Runnable runnable) {
+      add(new Task(Optional.of(key), true, runnable));
+    }
+
+    /**
+     * Adds a task that drops any pending task with the same key, wherever it is in the mailbox,
+     * since a newer one (e.g., a partial endpoint) supersedes it.
+     */
+    public void executeReplacing(Object key, Runnable runnable) {
+      add(new Task(Optional.of(key), false, runnable));
+    }
+
+    /** Drops any pending tasks and ignores new ones, once the session is gone. */
+    public synchronized void close() {
+      closed = true;
+      pending.clear();
+    }
+
+    public synchronized int size() {
+      return pending.size();
+    }
+  }
+
+  private Logger logger = LoggerFactory.getLogger(SessionScheduler.class);
+  private int maxPendingTasks = Integer.parseInt(
+    Optional.ofNullable(System.getenv("SESSION_MAX_PENDING_TASKS")).orElse("1000")
+  );
+  private ExecutorService executor;
+  private ExecutorService evaluationExecutor;
+
+  @Inject
+  public SessionScheduler() {
+    this(
+      Integer.parseInt(
+        Optional
+          .ofNullable(System.getenv("SESSION_THREADS"))
+          .orElse(String.valueOf(Runtime.getRuntime().availableProcessors() * 2))
+      ),
+      // evaluations mostly wait on the code engine, so there are more of them than pool threads.
+      Integer.parseInt(
+        Optional
+          .ofNullable(System.getenv("SESSION_EVALUATION_THREADS"))
+          .orElse(String.valueOf(Runtime.getRuntime().availableProcessors() * 4))
+      ),
+      Integer.parseInt(
+        Optional.ofNullable(System.getenv("SESSION_MAX_PENDING_EVALUATIONS")).orElse("1000")
+      )
+    );
+  }
+
+  SessionScheduler(int threads, int evaluationThreads, int maxPendingEvaluations) {
+    executor = Executors.newFixedThreadPool(threads);
+    // past the queue's capacity, evaluations are rejected like tasks for a full mailbox, rather
+    // than piling up behind a slow code engine.
+    evaluationExecutor =
+      new ThreadPoolExecutor(
+        evaluationThreads,
+        evaluationThreads,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(maxPendingEvaluations),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("session-evaluation-%d").build(),
+        new ThreadPoolExecutor.AbortPolicy()
+      );
+  }
+
+  /**
+   * The executor for work that waits on something else, like evaluations. It runs outside of any
+   * mailbox, so results that touch session state should be posted back to the session's mailbox.
+   * Throws RejectedExecutionException once too many evaluations are waiting for a thread.
+   */
+  public Executor evaluations() {
+    return evaluationExecutor;
+  }
+
+  public Mailbox mailbox(String name) {
+    return new Mailbox(name);
+  }
+}
@@ -0,0 +1,56 @@
+package core.streaming;
+
+import core.gen.rpc.Change;
+import core.gen.rpc.EditorState;
+import core.util.Diff;
+import core.util.Range;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/** Applies the source changes a client sends in place of its full source. */
+@Singleton
+public class SourceChanges {
+
+  @Inject
+  public SourceChanges() {}
+
+  /**
+   * The source after applying the changes in editorState, or empty if they weren't made against
+   * this source or don't fit it, in which case the client needs to send its full source.
+   */
+  public Optional<String> apply(String source, String sourceHash, EditorState editorState) {
+    if (!editorState.getSourceBaseHash().equals(sourceHash)) {
+      return Optional.empty();
+    }
+
+    if (editorState.getSourceChangesCount() == 0) {
+      return Optional.of(source);
+    }
+
+    // changes are all relative to the base source, so they can't overlap. Diff clamps ranges
+    // rather than failing, so an overlap would silently produce the wrong source.
+    List<Change> changes = new ArrayList<>(editorState.getSourceChangesList());
+    changes.sort(Comparator.comparingInt(Change::getStart));
+    Diff diff = Diff.fromInitialState(source, editorState.getCursor());
+    int previousStop = 0;
+    for (Change change : changes) {
+      if (
+        change.getStart() < previousStop ||
+        change.getStart() > change.getStop() ||
+        change.getStop() > source.length()
+      ) {
+        return Optional.empty();
+      }
+
+      diff =
+        diff.replaceRange(new Range(change.getStart(), change.getStop()), change.getSubstitution());
+      previousStop = change.getStop();
+    }
+
+    return Optional.of(diff.getSource());
+  }
+}
@@ -12,15 +12,18 @@ import core.gen.rpc.CommandType;
 import core.gen.rpc.CommandsResponse;
 import core.gen.rpc.CommandsResponseAlternative;
 import core.gen.rpc.EditorState;
+import core.gen.rpc.EditorStateResyncResponse;
 import core.gen.rpc.EndpointRequest;
 import core.gen.rpc.EvaluateAudioRequest;
 import core.gen.rpc.EvaluateRequest;
 import core.gen.rpc.EvaluateResponse;
+import core.gen.rpc.EvaluateTextRequest;
 import core.gen.rpc.KeepAliveResponse;
 import core.gen.rpc.Language;
 import core.metadata.EditorStateWithMetadata;
 import core.util.CommandLogger;
 import core.util.PhraseHintExtractor;
+import core.util.SourceHasher;
 import dagger.assisted.Assisted;
 import dagger.assisted.AssistedFactory;
 import dagger.assisted.AssistedInject;
@@ -28,12 +31,14 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.websocket.Session;
@@ -54,18 +59,24 @@ public class StreamManager {
   private List<ParsedTranscript> cachedTranscripts = new ArrayList<>();
   private boolean computedResponseForEditorState = false;
   private EditorStateWithMetadata editorState = new EditorStateWithMetadata();
+  // computed lazily, since it's only needed when the client sends source changes.
+  private Optional<String> editorSourceHash = Optional.empty();
   private EditorStateWithMetadata editorStateAtStartOfCurrentCommand = new EditorStateWithMetadata();
   private EditorStateWithMetadata editorStateAtStartOfPreviousCommand = new EditorStateWithMetadata();
-  private CompletionStage<Void> processAlternativesResponse = CompletableFuture.completedFuture(
-    null
-  );
+  // every evaluation for the session, chained so they respond in the order they were requested.
+  private CompletionStage<Void> evaluation = CompletableFuture.completedFuture(null);
 
   private AudioManager audioManager;
   private CallbackEvaluator callbackEvaluator;
   private CommandLogger commandLogger;
+  private EditorStateWarmer editorStateWarmer;
+  private SessionScheduler.Mailbox mailbox;
+  private SessionScheduler sessionScheduler;
   private PhraseHintExtractor phraseHintExtractor;
   private ServiceHttpClient serviceHttpClient;
   private SilenceDeterminer silenceDeterminer;
+  private SourceChanges sourceChanges;
+  private SourceHasher sourceHasher;
   private TranscriptEvaluator transcriptEvaluator;
   private TranscriptParser transcriptParser;
   private Optional<Session> websocket = Optional.empty();
@@ -81,6 +92,10 @@ public class StreamManager {
     CallbackEvaluator callbackEvaluator,
     SilenceDeterminer silenceDeterminer,
     ServiceHttpClient serviceHttpClient,
+    SourceChanges sourceChanges,
+    SourceHasher sourceHasher,
+    EditorStateWarmer editorStateWarmer,
+    SessionScheduler sessionScheduler,
     @Assisted Session websocket
   ) {
     this.audioManager = audioManagerFactory.create(this);
@@ -91,8 +106,13 @@ public class StreamManager {
     this.callbackEvaluator = callbackEvaluator;
     this.silenceDeterminer = silenceDeterminer;
     this.serviceHttpClient = serviceHttpClient;
+    this.sourceChanges = sourceChanges;
+    this.sourceHasher = sourceHasher;
+    this.editorStateWarmer = editorStateWarmer;
     // only null when we're instantiating to warm singletons
     this.websocket = Optional.ofNullable(websocket);
+    this.sessionScheduler = sessionScheduler;
+    this.mailbox = sessionScheduler.mailbox(this.websocket.map(s -> s.getId()).orElse("warmup"));
 
     resetTranscriptionState();
   }
@@ -143,8 +163,29 @@ public class StreamManager {
     audioManager.resetTranscriptionState();
   }
 
-  private void sendCommandsResponse(
+  /**
+   * Chains an evaluation after the session's previous one. Called on the mailbox, as is next, which
+   * should capture the editor state it evaluates against when it's called.
+   */
+  private void chainEvaluation(String message, Supplier<CompletionStage<Void>> next) {
+    evaluation =
+      evaluation
+        .thenComposeAsync(v -> next.get(), mailbox)
+        .exceptionally(
+          e -> {
+            handleException(message, e);
+            return null;
+          }
+        );
+  }
+
+  /**
+   * Evaluates transcripts against state and sends the response. Called on the mailbox, which it
+   * returns to once the evaluation is done, so the session's other tasks keep running meanwhile.
+   */
+  private CompletableFuture<Void> sendCommandsResponse(
     List<ParsedTranscript> transcripts,
+    EditorStateWithMetadata state,
     Optional<EndpointRequest> endpointRequest,
     List<String> chunkIds,
     boolean includeAlternatives
@@ -156,51 +197,116 @@ public class StreamManager {
       .orElse(UUID.randomUUID().toString());
     boolean finalize = endpointRequest.map(r -> r.getFinalize()).orElse(true);
 
-    CommandsResponse response = CommandsResponse.newBuilder().build();
-    if (!useCachedResponse) {
-      // Check if we're a non-noise transcript and evaluate. We still send down empty responses
-      // because the client always expects some sort of response for each request, even if it's
-      // empty.
-      if (transcripts.size() != 0) {
-        response =
-          Logs.logTime(
-            logger,
-            "core.evaluate-transcript",
-            Map.of("endpoint_id", endpointId),
-            () -> transcriptEvaluator.evaluate(transcripts, editorState, finalize)
-          );
-      }
+    CompletableFuture<CommandsResponse> evaluated = CompletableFuture.completedFuture(
+      CommandsResponse.newBuilder().build()
+    );
+    // Check if we're a non-noise transcript and evaluate. We still send down empty responses
+    // because the client always expects some sort of response for each request, even if it's
+    // empty.
+    if (useCachedResponse) {
+      evaluated = CompletableFuture.completedFuture(cachedResponse);
+    } else if (transcripts.size() != 0) {
+      evaluated =
+        CompletableFuture.supplyAsync(
+          () ->
+            Logs.logTime(
+              logger,
+              "core.evaluate-transcript",
+              Map.of("endpoint_id", endpointId),
+              () -> transcriptEvaluator.evaluate(transcripts, state, finalize)
+            ),
+          sessionScheduler.evaluations()
+        );
     }
 
-    response =
-      CommandsResponse
-        .newBuilder(useCachedResponse ? cachedResponse : response)
-        .setEndpointId(endpointId)
-        .setChunkId(chunkIds.size() > 0 ? chunkIds.get(chunkIds.size() - 1) : "")
-        .setTextResponse(text)
-        .setSilenceThreshold(silenceDeterminer.threshold(transcripts, getClientIdentifier()))
-        .setFinal(finalize)
-        .clearChunkIds()
-        .addAllChunkIds(chunkIds)
-        .build();
-
-    if (finalize) {
-      commandLogger.logResponse(response, editorState);
-    }
+    return evaluated.thenAcceptAsync(
+      evaluatedResponse -> {
+        CommandsResponse response = CommandsResponse
+          .newBuilder(evaluatedResponse)
+          .setEndpointId(endpointId)
+          .setChunkId(chunkIds.size() > 0 ? chunkIds.get(chunkIds.size() - 1) : "")
+          .setTextResponse(text)
+          .setSilenceThreshold(silenceDeterminer.threshold(transcripts, getClientIdentifier()))
+          .setFinal(finalize)
+          .clearChunkIds()
+          .addAllChunkIds(chunkIds)
+          .build();
+
+        if (finalize) {
+          commandLogger.logResponse(response, state);
+        }
+
+        Logs.stopTimerAndLog(
+          "endpoint:" + endpointId,
+          logger,
+          "core.endpoint",
+          Map.of("endpoint_id", endpointId)
+        );
+
+        cachedResponse = response;
+        if (!includeAlternatives) {
+          response = CommandsResponse.newBuilder(response).clearAlternatives().build();
+        }
 
-    Logs.stopTimerAndLog(
-      "endpoint:" + endpointId,
-      logger,
-      "core.endpoint",
-      Map.of("endpoint_id", endpointId)
+        send(
+          EvaluateResponse
+            .newBuilder()
+            .setCommandsResponse(responseForClient(response, state))
+            .build()
+        );
+      },
+      mailbox
     );
+  }
 
-    cachedResponse = response;
-    if (!includeAlternatives) {
-      response = CommandsResponse.newBuilder(response).clearAlternatives().build();
+  // state is the one the response was evaluated against, since the live one can change meanwhile.
+  private CommandsResponse responseForClient(
+    CommandsResponse response,
+    EditorStateWithMetadata state
+  ) {
+    if (!state.getOmitCommandSource()) {
+      return response;
+    }
+
+    // the execute alternative shares its commands with one of the alternatives, so only hash each
+    // source once.
+    Map<String, String> hashes = new IdentityHashMap<>();
+    CommandsResponse.Builder builder = CommandsResponse.newBuilder(response).clearAlternatives();
+    for (CommandsResponseAlternative alternative : response.getAlternativesList()) {
+      builder.addAlternatives(alternativeWithoutSources(alternative, hashes));
     }
 
-    send(EvaluateResponse.newBuilder().setCommandsResponse(response).build());
+    if (response.hasExecute()) {
+      builder.setExecute(alternativeWithoutSources(response.getExecute(), hashes));
+    }
+
+    return builder.build();
+  }
+
+  private CommandsResponseAlternative alternativeWithoutSources(
+    CommandsResponseAlternative alternative,
+    Map<String, String> hashes
+  ) {
+    CommandsResponseAlternative.Builder builder = CommandsResponseAlternative
+      .newBuilder(alternative)
+      .clearCommands();
+    for (Command command : alternative.getCommandsList()) {
+      if (command.getType() != CommandType.COMMAND_TYPE_DIFF) {
+        builder.addCommands(command);
+        continue;
+      }
+
+      builder.addCommands(
+        Command
+          .newBuilder(command)
+          .clearSource()
+          .setSourceHash(
+            hashes.computeIfAbsent(command.getSource(), source -> sourceHasher.hash(source))
+          )
+      );
+    }
+
+    return builder.build();
   }
 
   private void updateEditorState(EditorState newEditorState) {
@@ -224,14 +330,51 @@ public class StreamManager {
       newEditorState
     );
 
-    if (
-      !newEditorStateWithMetadata.getSource().equals(editorState.getSource()) ||
-      newEditorStateWithMetadata.getCursor() != editorState.getCursor()
-    ) {
+    boolean sourceChanged;
+    if (newEditorState.getSourceBaseHash().equals("")) {
+      sourceChanged = !newEditorStateWithMetadata.getSource().equals(editorState.getSource());
+    } else {
+      Optional<String> source = sourceChanges.apply(
+        editorState.getSource(),
+        editorSourceHash(),
+        newEditorState
+      );
+      if (source.isEmpty()) {
+        // keep working off of the state we have until the client sends the full source, since the
+        // new cursor and selection are relative to a source we don't have.
+        send(
+          EvaluateResponse
+            .newBuilder()
+            .setEditorStateResyncResponse(
+              EditorStateResyncResponse.newBuilder().setSourceHash(editorSourceHash())
+            )
+            .build()
+        );
+        return;
+      }
+
+      sourceChanged = newEditorState.getSourceChangesCount() > 0;
+      newEditorStateWithMetadata.setSource(source.get());
+    }
+
+    if (sourceChanged) {
+      editorSourceHash = Optional.empty();
+    }
+
+    if (sourceChanged || newEditorStateWithMetadata.getCursor() != editorState.getCursor()) {
       computedResponseForEditorState = false;
     }
 
     editorState = newEditorStateWithMetadata;
+    editorStateWarmer.warm(editorState);
+  }
+
+  private String editorSourceHash() {
+    if (editorSourceHash.isEmpty()) {
+      editorSourceHash = Optional.of(sourceHasher.hash(editorState.getSource()));
+    }
+
+    return editorSourceHash.get();
   }
 
   public void connect() {
@@ -239,6 +382,7 @@ public class StreamManager {
   }
 
   public void disconnect() {
+    mailbox.close();
     audioManager.disconnect();
     if (websocket.isEmpty()) {
       return;
@@ -253,7 +397,34 @@ public class StreamManager {
     }
   }
 
+  /**
+   * Queues a request from the client, which is handled on the session's mailbox after the requests
+   * before it, so websocket threads never wait on evaluation.
+   */
   public void onMessage(EvaluateRequest request) {
+    try {
+      if (
+        request.hasEditorStateRequest() &&
+        request.getEditorStateRequest().getEditorState().getSourceBaseHash().equals("")
+      ) {
+        // a full editor state replaces one that's still waiting, but source changes can't be
+        // skipped, since they're relative to the state before them.
+        mailbox.executeCoalescing("editor-state", () -> handleMessage(request));
+      } else if (request.hasEndpointRequest() && !request.getEndpointRequest().getFinalize()) {
+        // a partial endpoint is superseded by a later one for the same chunk.
+        mailbox.executeReplacing(
+          List.of("endpoint", request.getEndpointRequest().getChunkId()),
+          () -> handleMessage(request)
+        );
+      } else {
+        mailbox.execute(() -> handleMessage(request));
+      }
+    } catch (RejectedExecutionException e) {
+      handleException("StreamManager mailbox full", e);
+    }
+  }
+
+  private void handleMessage(EvaluateRequest request) {
     // maintain backwards compatibility with an old callback mechanism
     if (request.hasTextRequest() && request.getTextRequest().getText().equals("callback open")) {
       request =
@@ -268,24 +439,8 @@ public class StreamManager {
     if (request.hasAudioRequest()) {
       audioManager.processAudio(request);
     } else if (request.hasTextRequest()) {
-      List<String> transcripts = Arrays.asList(request.getTextRequest().getText().split(";"));
-      try {
-        sendCommandsResponse(
-          transcriptParser.parse(
-            transcripts
-              .stream()
-              .map(e -> Alternative.newBuilder().setTranscript(e).build())
-              .collect(Collectors.toList()),
-            editorState,
-            request.getTextRequest().getRerank()
-          ),
-          Optional.empty(),
-          Arrays.asList(),
-          request.getTextRequest().getIncludeAlternatives()
-        );
-      } catch (Exception e) {
-        handleException("Uncaught text request exception", e);
-      }
+      EvaluateTextRequest textRequest = request.getTextRequest();
+      chainEvaluation("Uncaught text request exception", () -> handleTextRequest(textRequest));
     } else if (request.hasInitializeRequest()) {
       if (!appendToPreviousInProgress) {
         editorStateAtStartOfPreviousCommand = editorStateAtStartOfCurrentCommand;
@@ -307,17 +462,16 @@ public class StreamManager {
       appendToPreviousInProgress = true;
       audioManager.appendToPrevious();
       editorState = editorStateAtStartOfPreviousCommand;
+      editorSourceHash = Optional.empty();
     } else if (request.hasEndpointRequest()) {
       Logs.startTimer("endpoint:" + request.getEndpointRequest().getEndpointId());
       audioManager.processEndpointRequest(request, editorState);
     } else if (request.hasCallbackRequest()) {
-      Optional<CommandsResponse> response = callbackEvaluator.evaluate(
-        request.getCallbackRequest(),
-        editorState
+      CallbackRequest callbackRequest = request.getCallbackRequest();
+      chainEvaluation(
+        "Uncaught callback request exception",
+        () -> handleCallbackRequest(callbackRequest)
       );
-      if (response.isPresent()) {
-        send(EvaluateResponse.newBuilder().setCommandsResponse(response.get()).build());
-      }
     } else if (request.hasKeepAliveRequest()) {
       send(
         EvaluateResponse
@@ -338,32 +492,118 @@ public class StreamManager {
     }
   }
 
+  /**
+   * Queues alternatives from the speech engine, which are handled on the session's mailbox after
+   * the ones before them, like requests from the client.
+   */
   public void processAlternativesResponse(
     List<String> chunkIds,
     EndpointRequest endpointRequest,
     AlternativesResponse alternativesResponse
   ) {
-    processAlternativesResponse =
-      processAlternativesResponse
-        .thenAcceptAsync(
-          v -> {
-            List<ParsedTranscript> transcripts = transcriptParser.parse(
-              alternativesResponse.getAlternativesList(),
-              editorState,
-              true
-            );
-            sendCommandsResponse(transcripts, Optional.of(endpointRequest), chunkIds, true);
-            computedResponseForEditorState = true;
-            cachedTranscripts =
-              transcripts.stream().map(e -> new ParsedTranscript(e)).collect(Collectors.toList());
-          }
-        )
-        .exceptionally(
-          e -> {
-            handleException("Uncaught process alternative exception", e);
-            return null;
-          }
-        );
+    try {
+      mailbox.execute(
+        () ->
+          chainEvaluation(
+            "Uncaught process alternative exception",
+            () -> handleAlternativesResponse(chunkIds, endpointRequest, alternativesResponse)
+          )
+      );
+    } catch (RejectedExecutionException e) {
+      handleException("StreamManager mailbox full", e);
+    }
+  }
+
+  private CompletableFuture<Void> handleAlternativesResponse(
+    List<String> chunkIds,
+    EndpointRequest endpointRequest,
+    AlternativesResponse alternativesResponse
+  ) {
+    EditorStateWithMetadata state = editorState;
+    return transcriptParser
+      .parse(alternativesResponse.getAlternativesList(), state, true)
+      .thenComposeAsync(
+        transcripts ->
+          Logs
+            .logTimeAsync(
+              logger,
+              "core.send-commands-response",
+              Map.of("endpoint_id", endpointRequest.getEndpointId()),
+              () ->
+                sendCommandsResponse(
+                  transcripts,
+                  state,
+                  Optional.of(endpointRequest),
+                  chunkIds,
+                  true
+                )
+            )
+            .thenRun(
+              () -> {
+                // if the editor state changed while evaluating, the response isn't for it.
+                if (editorState == state) {
+                  computedResponseForEditorState = true;
+                }
+
+                cachedTranscripts =
+                  transcripts
+                    .stream()
+                    .map(e -> new ParsedTranscript(e))
+                    .collect(Collectors.toList());
+              }
+            ),
+        mailbox
+      );
+  }
+
+  private CompletableFuture<Void> handleTextRequest(EvaluateTextRequest request) {
+    EditorStateWithMetadata state = editorState;
+    return transcriptParser
+      .parse(
+        Arrays
+          .stream(request.getText().split(";"))
+          .map(e -> Alternative.newBuilder().setTranscript(e).build())
+          .collect(Collectors.toList()),
+        state,
+        request.getRerank()
+      )
+      .thenComposeAsync(
+        parsed ->
+          Logs.logTimeAsync(
+            logger,
+            "core.send-commands-response",
+            Map.of(),
+            () ->
+              sendCommandsResponse(
+                parsed,
+                state,
+                Optional.empty(),
+                Arrays.asList(),
+                request.getIncludeAlternatives()
+              )
+          ),
+        mailbox
+      );
+  }
+
+  // callbacks can evaluate a whole command (e.g., chained ones), so they run off the mailbox too.
+  private CompletableFuture<Void> handleCallbackRequest(CallbackRequest request) {
+    EditorStateWithMetadata state = editorState;
+    return CompletableFuture
+      .supplyAsync(() -> callbackEvaluator.evaluate(request, state), sessionScheduler.evaluations())
+      .thenAcceptAsync(
+        response ->
+          response.ifPresent(
+            r ->
+              send(
+                EvaluateResponse
+                  .newBuilder()
+                  .setCommandsResponse(responseForClient(r, state))
+                  .build()
+              )
+          ),
+        mailbox
+      );
   }
 
   public void send(EvaluateResponse response) {
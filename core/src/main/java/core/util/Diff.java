@@ -13,6 +13,8 @@ public class Diff {
   private final String initialSource;
   private final List<Change> changes;
   private final int cursor;
+  // Diffs are immutable, so the source only needs to be built once.
+  private String source;
 
   private Diff(String initialSource, int cursor, List<Change> changes) {
     this.initialSource = initialSource;
@@ -43,6 +45,12 @@ public class Diff {
   }
 
   public String getSource() {
+    if (source != null) {
+      return source;
+    } else if (changes.size() == 0) {
+      return initialSource;
+    }
+
     StringBuilder builder = new StringBuilder(initialSource);
     // Couldn't see anything in the docs about which indexing replace is using,
     // so just doing this backwards just in case it's not the indexing of the original.
@@ -50,7 +58,8 @@ public class Diff {
       Change change = changes.get(i);
       builder.replace(change.range.start, change.range.stop, change.substitution);
     }
-    return builder.toString();
+    source = builder.toString();
+    return source;
   }
 
   public Diff insert(int index, String string) {
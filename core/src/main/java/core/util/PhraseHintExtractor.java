@@ -1,10 +1,15 @@
 package core.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -22,6 +27,13 @@ public class PhraseHintExtractor {
   private final int phraseHintsLimit = 500;
   public static int customHintsLimit = 50;
 
+  // Hints are extracted ahead of time when an editor's state changes, so cache them by source.
+  private Cache<List<Object>, List<String>> extracted = CacheBuilder
+    .newBuilder()
+    .maximumSize(1000)
+    .expireAfterAccess(5, TimeUnit.MINUTES)
+    .build();
+
   private Map<String, Long> alphanumericCounts(String source) {
     Pattern p = Pattern.compile("[a-zA-Z_]+");
     Matcher m = p.matcher(source);
@@ -56,13 +68,24 @@ public class PhraseHintExtractor {
   }
 
   public List<String> extract(String source, List<String> hints) {
-    return new ArrayList<>(
-      Stream
-        .concat(
-          alphanumericCounts(source).entrySet().stream().map(Map.Entry::<String, Long>getKey),
-          hints.stream().map(s -> removeHintStyling(s)).limit(customHintsLimit)
-        )
-        .collect(Collectors.toSet())
+    List<Object> key = List.of(
+      Hashing.murmur3_128().hashString(source, StandardCharsets.UTF_8),
+      new ArrayList<>(hints)
     );
+    List<String> result = extracted.getIfPresent(key);
+    if (result == null) {
+      result =
+        new ArrayList<>(
+          Stream
+            .concat(
+              alphanumericCounts(source).entrySet().stream().map(Map.Entry::<String, Long>getKey),
+              hints.stream().map(s -> removeHintStyling(s)).limit(customHintsLimit)
+            )
+            .collect(Collectors.toSet())
+        );
+      extracted.put(key, result);
+    }
+
+    return new ArrayList<>(result);
   }
 }
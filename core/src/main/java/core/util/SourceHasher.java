@@ -0,0 +1,19 @@
+package core.util;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+@Singleton
+public class SourceHasher {
+
+  @Inject
+  public SourceHasher() {}
+
+  // Clients compute the same hex-encoded SHA-256 of the UTF-8 source, so don't change this
+  // without versioning the protocol.
+  public String hash(String source) {
+    return Hashing.sha256().hashString(source, StandardCharsets.UTF_8).toString();
+  }
+}
@@ -0,0 +1,137 @@
+package core.util;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Line and whitespace positions in a source string, computed once so that converting positions to
+ * lines is a binary search rather than a scan. Get one from AstFactory.sourceIndex, which shares
+ * it between everything working with the same source.
+ */
+public class SourceIndex {
+
+  public final String source;
+
+  // the position of the first character of each line.
+  private final int[] lineStarts;
+  private final Supplier<int[]> lineNonWhitespaceStarts = Suppliers.memoize(
+    this::computeLineNonWhitespaceStarts
+  );
+  private final Supplier<List<Range>> nonWhitespaceRanges = Suppliers.memoize(
+    this::computeNonWhitespaceRanges
+  );
+
+  public SourceIndex(String source) {
+    this.source = source;
+
+    int lines = 1;
+    for (int i = 0; i < source.length(); i++) {
+      if (source.charAt(i) == '\n') {
+        lines++;
+      }
+    }
+
+    lineStarts = new int[lines];
+    int line = 1;
+    for (int i = 0; i < source.length(); i++) {
+      if (source.charAt(i) == '\n') {
+        lineStarts[line++] = i + 1;
+      }
+    }
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+  }
+
+  private int[] computeLineNonWhitespaceStarts() {
+    int[] result = new int[lineStarts.length];
+    for (int line = 0; line < lineStarts.length; line++) {
+      int stop = lineStop(line);
+      int position = lineStarts[line];
+      while (position < stop && isWhitespace(source.charAt(position))) {
+        position++;
+      }
+      result[line] = position;
+    }
+
+    return result;
+  }
+
+  private List<Range> computeNonWhitespaceRanges() {
+    List<Range> ranges = new ArrayList<>();
+    boolean previousWasWhitespace = true;
+    int start = 0;
+    for (int i = 0; i < source.length(); i++) {
+      boolean isWhitespace = isWhitespace(source.charAt(i));
+      if (previousWasWhitespace && !isWhitespace) {
+        start = i;
+      } else if (!previousWasWhitespace && isWhitespace) {
+        ranges.add(new Range(start, i));
+      }
+
+      previousWasWhitespace = isWhitespace;
+    }
+
+    if (!previousWasWhitespace) {
+      ranges.add(new Range(start, source.length()));
+    }
+
+    return Collections.unmodifiableList(ranges);
+  }
+
+  private int lineStop(int line) {
+    return line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : source.length();
+  }
+
+  public int lineCount() {
+    return lineStarts.length;
+  }
+
+  /** The zero-based line containing position, matching LinePositionConverter.position. */
+  public int line(int position) {
+    // part of hack to handle end of file list add.
+    if (position > source.length()) {
+      return line(source.length()) + 1;
+    }
+
+    int index = Arrays.binarySearch(lineStarts, position);
+    return index < 0 ? -index - 2 : index;
+  }
+
+  /** The range from the start of the first line to the end of the last line. */
+  public Range lines(int first, int last) {
+    return new Range(lineStarts[first], lineStop(last));
+  }
+
+  /** The range of lines covered by range, matching LinePositionConverter.range. */
+  public Range lineRange(Range range) {
+    return new Range(line(range.start), line(range.stop) + 1);
+  }
+
+  public int lineStart(int position) {
+    return lineStarts[line(Math.min(position, source.length()))];
+  }
+
+  public int lineEnd(int position) {
+    return lineStop(line(Math.min(position, source.length())));
+  }
+
+  /** The first non-whitespace position on the line containing position, or its end if blank. */
+  public int lineNonWhitespaceStart(int position) {
+    return lineNonWhitespaceStarts.get()[line(Math.min(position, source.length()))];
+  }
+
+  /** The whitespace at the start of the line containing position. */
+  public String indentation(int position) {
+    return source.substring(lineStart(position), lineNonWhitespaceStart(position));
+  }
+
+  public List<Range> nonWhitespaceRanges() {
+    return nonWhitespaceRanges.get();
+  }
+}
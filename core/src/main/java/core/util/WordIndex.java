@@ -0,0 +1,83 @@
+package core.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where each word starts in a source string, so that a phrase search only has to try the positions
+ * where its first word appears rather than every position in the source. A word is a run of ASCII
+ * letters and digits, lowercased, so camelCase identifiers are a single word and snake_case and
+ * dashed ones are split. Get one from AstFactory.wordIndex, which shares it between everything
+ * working with the same source.
+ */
+public class WordIndex {
+
+  public final String source;
+
+  // the start of every occurrence of each word.
+  private final Map<String, int[]> starts = new HashMap<>();
+
+  public WordIndex(String source) {
+    this.source = source;
+
+    Map<String, List<Integer>> result = new HashMap<>();
+    int i = 0;
+    while (i < source.length()) {
+      if (!isWordCharacter(source.charAt(i))) {
+        i++;
+        continue;
+      }
+
+      int start = i;
+      while (i < source.length() && isWordCharacter(source.charAt(i))) {
+        i++;
+      }
+
+      result
+        .computeIfAbsent(source.substring(start, i).toLowerCase(), k -> new ArrayList<>())
+        .add(start);
+    }
+
+    for (Map.Entry<String, List<Integer>> entry : result.entrySet()) {
+      starts.put(entry.getKey(), entry.getValue().stream().mapToInt(e -> e).toArray());
+    }
+  }
+
+  public static boolean isWordCharacter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+  }
+
+  /**
+   * Every position, in order, where text (lowercase letters and digits) appears inside a word,
+   * ignoring case. Since words are maximal runs, this includes every position in the source where
+   * text appears, ignoring case.
+   */
+  public int[] positions(String text) {
+    List<int[]> found = new ArrayList<>();
+    int size = 0;
+    for (Map.Entry<String, int[]> entry : starts.entrySet()) {
+      for (int k = entry.getKey().indexOf(text); k >= 0; k = entry.getKey().indexOf(text, k + 1)) {
+        int[] positions = entry.getValue().clone();
+        for (int j = 0; j < positions.length; j++) {
+          positions[j] += k;
+        }
+
+        found.add(positions);
+        size += positions.length;
+      }
+    }
+
+    int[] result = new int[size];
+    int offset = 0;
+    for (int[] positions : found) {
+      System.arraycopy(positions, 0, result, offset, positions.length);
+      offset += positions.length;
+    }
+
+    Arrays.sort(result);
+    return result;
+  }
+}
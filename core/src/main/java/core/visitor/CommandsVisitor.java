@@ -477,7 +477,7 @@ public class CommandsVisitor
         !(transcript.contains("repeat") || transcript.contains("again"))
       ) {
         CommandsResponse evaluated = context.transcriptEvaluator.evaluate(
-          transcriptParser.parse(
+          transcriptParser.parseBlocking(
             Arrays.asList(Alternative.newBuilder().setTranscript(transcript).build()),
             context.state,
             true
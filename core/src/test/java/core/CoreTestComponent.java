@@ -3,12 +3,15 @@ package core;
 import core.ast.AstFactory;
 import core.codeengine.CodeEngineClient;
 import core.codeengine.Tokenizer;
+import core.evaluator.TranscriptEvaluator;
 import core.evaluator.TranscriptNormalizer;
 import core.evaluator.TranscriptParser;
 import core.parser.CommandAntlrParser;
 import core.parser.Grammar;
 import core.parser.GrammarAntlrParser;
 import core.parser.Parser;
+import core.selector.PythonSelectorMap;
+import core.selector.SelectorMapFactory;
 import core.visitor.TreeConverter;
 import dagger.Component;
 import javax.inject.Singleton;
@@ -37,11 +40,17 @@ public interface CoreTestComponent {
 
   public TranscriptParser transcriptParser();
 
+  public TranscriptEvaluator transcriptEvaluator();
+
   public TranscriptNormalizer transcriptNormalizer();
 
   public LanguageDeterminer languageDeterminer();
 
+  public SelectorMapFactory selectorMapFactory();
+
   public Tokenizer tokenizer();
 
   public UserState userState();
+
+  public void inject(PythonSelectorMap selectorMap);
 }
@@ -0,0 +1,175 @@
+package core.ast.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.BaseTest;
+import core.ast.Ast;
+import core.gen.rpc.Language;
+import core.util.Range;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class AstNodeIndexTest extends BaseTest {
+
+  private List<Class<?>> types = Arrays.asList(
+    AstNode.class,
+    AstToken.class,
+    AstList.class,
+    Ast.Identifier.class,
+    Ast.Call.class,
+    Ast.Statement.class,
+    Ast.Comment.class
+  );
+
+  private String source =
+    "# leading\n" +
+    "def f(a, b):\n" +
+    "    # inner\n" +
+    "    x = g(a, 1)\n" +
+    "    return h(x, b)  # trailing\n" +
+    "\n" +
+    "class C:\n" +
+    "    def m(self):\n" +
+    "        return f(1, 2)\n" +
+    "\n" +
+    "y = f(3, 4)\n";
+
+  private AstParent root(String source) {
+    return component.astFactory().createFileRoot(source, Language.LANGUAGE_PYTHON);
+  }
+
+  private List<AstNode> walk(AstNode node, Class<?> type) {
+    return node.filter(e -> type.isAssignableFrom(e.getClass())).collect(Collectors.toList());
+  }
+
+  private List<AstNode> walk(AstNode node, Class<?> type, Range range) {
+    return node
+      .filter(e -> type.isAssignableFrom(e.getClass()) && e.range().overlaps(range))
+      .collect(Collectors.toList());
+  }
+
+  private List<Range> ranges(AstParent root) {
+    // every position as a cursor, plus spans that cut through the middle of nodes.
+    List<Range> result = new ArrayList<>();
+    int length = root.tree().tokens().get(root.tree().tokens().size() - 1).range().stop;
+    for (int i = 0; i < length; i++) {
+      result.add(new Range(i));
+    }
+
+    for (int i = 0; i + 7 < length; i += 5) {
+      result.add(new Range(i, i + 7));
+    }
+
+    result.add(new Range(0, length));
+    return result;
+  }
+
+  // searches from the root first, which builds the index, so the searches from inner nodes use it.
+  private void assertIndexMatchesWalk(AstParent root) {
+    for (Class<?> type : types) {
+      assertEquals(walk(root, type), root.find(type).collect(Collectors.toList()), type.getName());
+    }
+
+    assertTrue(root.tree().nodeIndex(root).isPresent());
+    // comments aren't under the root, but they're indexed too.
+    List<AstNode> nodes = root.filter(e -> true).collect(Collectors.toList());
+    for (AstNode comment : root.tree().comments) {
+      nodes.addAll(comment.filter(e -> true).collect(Collectors.toList()));
+    }
+    List<Range> ranges = ranges(root);
+    for (AstNode node : nodes) {
+      assertTrue(root.tree().nodeIndex(node).isPresent());
+      for (Class<?> type : types) {
+        assertEquals(
+          walk(node, type),
+          node.find(type).collect(Collectors.toList()),
+          type.getName() + " in " + node
+        );
+
+        for (Range range : ranges) {
+          assertEquals(
+            walk(node, type, range),
+            node.find(type, range).collect(Collectors.toList()),
+            type.getName() + " in " + node + " overlapping " + range
+          );
+        }
+      }
+    }
+  }
+
+  private Ast.Call call(AstParent root, String name) {
+    return root
+      .find(Ast.Call.class)
+      .filter(e -> e.code().startsWith(name + "("))
+      .findFirst()
+      .get();
+  }
+
+  @Test
+  public void testFind() {
+    AstParent root = root(source);
+    assertEquals(3, root.tree().comments.size());
+    assertIndexMatchesWalk(root);
+  }
+
+  @Test
+  public void testReplace() {
+    AstParent root = root(source);
+    assertIndexMatchesWalk(root);
+    call(root, "g").replace(call(root("k(5, 6, 7)\n"), "k"));
+    assertTrue(root.code().contains("k(5, 6, 7)"));
+    assertIndexMatchesWalk(root);
+  }
+
+  @Test
+  public void testRemove() {
+    AstParent root = root(source);
+    assertIndexMatchesWalk(root);
+    root
+      .find(Ast.Statement.class)
+      .filter(e -> e.code().startsWith("y ="))
+      .findFirst()
+      .get()
+      .remove();
+    assertFalse(root.code().contains("y ="));
+    assertIndexMatchesWalk(root);
+  }
+
+  @Test
+  public void testAdd() {
+    AstParent root = root(source);
+    assertIndexMatchesWalk(root);
+    Ast.Argument argument = call(root("z(9)\n"), "z").find(Ast.Argument.class).findFirst().get();
+    call(root, "h").find(Ast.ArgumentList.class).findFirst().get().add(1, argument);
+    assertTrue(root.code().contains("h(x, 9, b)"));
+    assertIndexMatchesWalk(root);
+  }
+
+  @Test
+  public void testClone() {
+    AstParent root = root(source);
+    assertIndexMatchesWalk(root);
+    AstParent cloned = component.astFactory().clone(root);
+    assertTrue(root.tree().nodeIndex(call(root, "h")).isPresent());
+    assertIndexMatchesWalk(cloned);
+    call(cloned, "g").remove();
+    assertTrue(root.tree().nodeIndex(call(root, "h")).isPresent());
+    assertIndexMatchesWalk(root);
+  }
+
+  @Test
+  public void testUpdateComments() {
+    AstParent root = root(source);
+    assertIndexMatchesWalk(root);
+    AstNode inner = root.tree().comments.get(1);
+    inner.remove();
+    root.tree().updateComments();
+    assertFalse(root.tree().comments.contains(inner));
+    assertIndexMatchesWalk(root);
+  }
+}
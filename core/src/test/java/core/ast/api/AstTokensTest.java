@@ -0,0 +1,169 @@
+package core.ast.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import core.BaseTest;
+import core.ast.AstFactory;
+import core.gen.rpc.Language;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class AstTokensTest extends BaseTest {
+
+  private AstFactory factory = component.astFactory();
+
+  private AstTree tree() {
+    return factory
+      .createFileRoot(
+        "def f(a, b):\n    return a + b\n\n\nx = f(1, 2)\nprint(x)\n",
+        Language.LANGUAGE_PYTHON
+      )
+      .tree();
+  }
+
+  private AstToken token(Random random) {
+    return random.nextInt(3) == 0
+      ? factory.createNewline()
+      : factory.createToken("t".repeat(1 + random.nextInt(3)));
+  }
+
+  // what every token's range, index, and prior newlines should be, computed from scratch from the
+  // codes rather than through the token fields.
+  private List<List<Integer>> expected(AstTree tree) {
+    List<List<Integer>> result = new ArrayList<>();
+    int offset = 0;
+    int newlines = 0;
+    for (int i = 0; i < tree.tokens().size(); i++) {
+      AstToken token = tree.tokens().get(i);
+      result.add(Arrays.asList(offset, offset + token.code.length(), i, newlines));
+      offset += token.code.length();
+      if (token instanceof AstNewline) {
+        newlines++;
+      }
+    }
+
+    return result;
+  }
+
+  private List<Integer> read(AstToken token) {
+    return Arrays.asList(
+      token.range().start,
+      token.range().stop,
+      token.index(),
+      token.priorNewlines()
+    );
+  }
+
+  // reads a single token first, so the rest are read after the refresh it triggered, then checks
+  // every token against a full recomputation.
+  private void assertMatchesRecomputation(AstTree tree, int first) {
+    List<List<Integer>> expected = expected(tree);
+    assertEquals(expected.get(first), read(tree.tokens().get(first)));
+    List<List<Integer>> lazy = tree
+      .tokens()
+      .stream()
+      .map(this::read)
+      .collect(Collectors.toList());
+    tree.updateInvariants();
+    List<List<Integer>> recomputed = tree
+      .tokens()
+      .stream()
+      .map(this::read)
+      .collect(Collectors.toList());
+    assertEquals(recomputed, lazy);
+    assertEquals(expected, recomputed);
+  }
+
+  @Test
+  public void testSubListEdits() {
+    AstTree tree = tree();
+    Random random = new Random(0);
+    List<AstToken> tokens = tree.tokens();
+
+    // edits late in the list, then early in a nested sub-list, then late again, with no reads in
+    // between, so the watermark has to end up at the earliest one.
+    tokens.subList(10, 20).add(3, token(random));
+    tokens.subList(2, 15).subList(1, 5).set(2, token(random));
+    tokens.subList(12, 18).add(token(random));
+    assertMatchesRecomputation(tree, tokens.size() - 1);
+
+    // a read after an edit refreshes everything, so the next edit only invalidates from itself.
+    tokens.subList(5, 9).add(0, factory.createNewline());
+    assertEquals(expected(tree).get(20), read(tokens.get(20)));
+    tokens.subList(15, 25).addAll(2, Arrays.asList(token(random), factory.createNewline()));
+    assertMatchesRecomputation(tree, 16);
+
+    // removing through a sub-list, and through the list with tokens on both sides of the stale
+    // suffix, whose index fields are out of date.
+    tokens.subList(3, 12).removeAll(Arrays.asList(tokens.get(4), tokens.get(10)));
+    assertMatchesRecomputation(tree, 0);
+    tokens.subList(8, 10).add(token(random));
+    tokens.removeAll(Arrays.asList(tokens.get(2), tokens.get(tokens.size() - 2)));
+    assertMatchesRecomputation(tree, tokens.size() - 1);
+    tokens.subList(20, 22).set(1, factory.createNewline());
+    tokens.removeAll(Arrays.asList(tokens.get(22), tokens.get(25)));
+    assertMatchesRecomputation(tree, 21);
+
+    tokens.subList(6, 12).subList(2, 4).clear();
+    tokens.subList(1, 3).remove(1);
+    assertMatchesRecomputation(tree, 1);
+  }
+
+  @Test
+  public void testRandomEdits() {
+    AstTree tree = tree();
+    Random random = new Random(0);
+    List<AstToken> tokens = tree.tokens();
+    for (int step = 0; step < 300; step++) {
+      int start = random.nextInt(tokens.size());
+      int stop = start + random.nextInt(tokens.size() - start + 1);
+      List<AstToken> edited = tokens.subList(start, stop);
+      if (random.nextBoolean() && edited.size() > 0) {
+        int nestedStart = random.nextInt(edited.size());
+        int nestedStop = nestedStart + random.nextInt(edited.size() - nestedStart + 1);
+        edited = edited.subList(nestedStart, nestedStop);
+      }
+
+      int operation = random.nextInt(tokens.size() < 20 ? 3 : 6);
+      if (operation == 0) {
+        edited.add(token(random));
+      } else if (operation == 1) {
+        edited.add(random.nextInt(edited.size() + 1), token(random));
+      } else if (operation == 2) {
+        edited.addAll(
+          random.nextInt(edited.size() + 1),
+          Arrays.asList(token(random), token(random))
+        );
+      } else if (operation == 3 && edited.size() > 0) {
+        edited.set(random.nextInt(edited.size()), token(random));
+      } else if (operation == 4 && edited.size() > 0) {
+        edited.remove(random.nextInt(edited.size()));
+      } else if (operation == 5) {
+        // tokens anywhere in the list, not just in the sub-list.
+        List<AstToken> removed = Arrays.asList(
+          tokens.get(random.nextInt(tokens.size())),
+          tokens.get(random.nextInt(tokens.size()))
+        );
+        if (random.nextBoolean()) {
+          tokens.removeAll(removed);
+        } else {
+          edited.removeAll(removed);
+        }
+      }
+
+      int read = random.nextInt(4);
+      if (read == 0) {
+        assertMatchesRecomputation(tree, random.nextInt(tokens.size()));
+      } else if (read == 1) {
+        int index = random.nextInt(tokens.size());
+        assertEquals(expected(tree).get(index), read(tokens.get(index)), "step " + step);
+      }
+    }
+
+    assertMatchesRecomputation(tree, 0);
+  }
+}
@@ -0,0 +1,85 @@
+package core.codeengine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import codeengine.gen.rpc.RescoringAlternative;
+import core.BaseTest;
+import core.gen.rpc.Language;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class CodeEngineBatchSchedulerTest extends BaseTest {
+
+  @Test
+  public void testResultsCompleteOffResponseThread() {
+    // stands in for the http client's executor, which completes responses.
+    ExecutorService http = Executors.newSingleThreadExecutor(r -> new Thread(r, "http"));
+    CodeEngineBatchScheduler scheduler = new CodeEngineBatchScheduler(
+      (language, slotContexts) -> CompletableFuture.completedFuture(List.of()),
+      (language, slotContexts) ->
+        CompletableFuture.supplyAsync(
+          () ->
+            slotContexts
+              .stream()
+              .map(e -> RescoringAlternative.newBuilder().build())
+              .collect(Collectors.toList()),
+          http
+        )
+    );
+
+    List<CompletableFuture<String>> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(
+        scheduler
+          .rescore(Language.LANGUAGE_PYTHON, new SlotContext("", "", 0, Optional.empty()))
+          .thenApply(e -> Thread.currentThread().getName())
+      );
+    }
+
+    for (CompletableFuture<String> thread : threads) {
+      assertNotEquals("http", thread.join());
+    }
+    assertEquals(0, scheduler.queueDepth());
+    http.shutdown();
+  }
+
+  @Test
+  public void testBatchesNeverExceedMaxSize() {
+    List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+    CodeEngineBatchScheduler scheduler = new CodeEngineBatchScheduler(
+      (language, slotContexts) -> CompletableFuture.completedFuture(List.of()),
+      (language, slotContexts) -> {
+        sizes.add(slotContexts.size());
+        return CompletableFuture.completedFuture(
+          slotContexts
+            .stream()
+            .map(e -> RescoringAlternative.newBuilder().build())
+            .collect(Collectors.toList())
+        );
+      }
+    );
+
+    // a full batch is taken as soon as it fills, so the rest go into the next one.
+    int max = scheduler.maxBatchSize;
+    List<CompletableFuture<RescoringAlternative>> results = new ArrayList<>();
+    for (int i = 0; i < max * 3 + 1; i++) {
+      results.add(
+        scheduler.rescore(Language.LANGUAGE_PYTHON, new SlotContext("", "", 0, Optional.empty()))
+      );
+    }
+
+    results.forEach(CompletableFuture::join);
+    List<Integer> sorted = new ArrayList<>(sizes);
+    Collections.sort(sorted);
+    assertEquals(List.of(1, max, max, max), sorted);
+    assertEquals(0, scheduler.queueDepth());
+  }
+}
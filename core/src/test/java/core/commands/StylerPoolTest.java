@@ -0,0 +1,58 @@
+package core.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import core.BaseTest;
+import core.util.SourceHasher;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import org.junit.jupiter.api.Test;
+import toolbelt.env.Env;
+
+public class StylerPoolTest extends BaseTest {
+
+  private String jar = new Env().libraryRoot() + "/stylers/google-java-format.jar";
+  private List<String> command = Arrays.asList("java", "-jar", jar, "-");
+
+  private String runJar(String source) throws IOException, InterruptedException {
+    Process process = new ProcessBuilder(command).start();
+    try (OutputStream input = process.getOutputStream()) {
+      input.write(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String result = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    assertEquals(0, process.waitFor());
+    return result;
+  }
+
+  @Test
+  public void testJavaMatchesJar() throws IOException, InterruptedException {
+    assumeTrue(new File(jar).exists());
+    StylerPool stylerPool = new StylerPool();
+    stylerPool.sourceHasher = new SourceHasher();
+    String source =
+      "import java.util.Map;\n" +
+      "import java.util.List;\n" +
+      "import java.io.File;\n" +
+      "import java.util.ArrayList;\n" +
+      "public class Foo { List<String> a = new ArrayList<>(); File b;\n" +
+      "void bar( ) { int c=1; }}\n";
+
+    Semaphore semaphore = new Semaphore(1);
+    semaphore.acquireUninterruptibly();
+    Optional<String> result = stylerPool.formatJava(command, source, semaphore);
+    assertEquals(1, semaphore.availablePermits());
+    // the in-process formatter can fail to link on some JDKs, in which case the jar is run instead.
+    assumeTrue(result.isPresent());
+    assertEquals(runJar(source), result.get());
+    assertFalse(result.get().contains("java.util.Map"));
+  }
+}
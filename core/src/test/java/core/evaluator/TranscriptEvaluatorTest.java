@@ -0,0 +1,192 @@
+package core.evaluator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ByteString;
+import core.BaseTest;
+import core.gen.rpc.Command;
+import core.gen.rpc.CommandType;
+import core.gen.rpc.CommandsResponseAlternative;
+import core.gen.rpc.EditorState;
+import core.gen.rpc.Language;
+import core.metadata.CommandsResponseAlternativeWithMetadata;
+import core.metadata.EditorStateWithMetadata;
+import core.parser.ParseTree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import speechengine.gen.rpc.Alternative;
+
+public class TranscriptEvaluatorTest extends BaseTest {
+
+  private TranscriptEvaluator transcriptEvaluator = component.transcriptEvaluator();
+  private TranscriptParser transcriptParser = component.transcriptParser();
+
+  private String source =
+    "def f(a, b):\n" +
+    "    return a + b\n" +
+    "\n" +
+    "\n" +
+    "x = f(1, 2)\n" +
+    "print(x)\n";
+
+  // evaluations are cached per session, so each state gets its own token to share nothing.
+  private EditorStateWithMetadata state() {
+    return new EditorStateWithMetadata(
+      EditorState
+        .newBuilder()
+        .setSource(ByteString.copyFromUtf8(source))
+        .setCursor(0)
+        .setFilename("file.py")
+        .setLanguage(Language.LANGUAGE_PYTHON)
+        .setToken(UUID.randomUUID().toString())
+        .build()
+    );
+  }
+
+  private List<ParsedTranscript> parse(EditorStateWithMetadata state, String... transcripts) {
+    return Arrays
+      .stream(transcripts)
+      .flatMap(
+        e ->
+          transcriptParser
+            .parseWithAntlr(Alternative.newBuilder().setTranscript(e).build(), state)
+            .stream()
+      )
+      .collect(Collectors.toList());
+  }
+
+  private ParsedTranscript invalid(String transcript) {
+    return new ParsedTranscript(
+      Alternative.newBuilder().setTranscript(transcript).build(),
+      false,
+      new ParseTree("", "", "", 0, 0, Optional.empty())
+    );
+  }
+
+  // everything the client gets, other than the id, which is new for every alternative.
+  private List<CommandsResponseAlternative> withoutIds(
+    List<CommandsResponseAlternativeWithMetadata> alternatives
+  ) {
+    return alternatives
+      .stream()
+      .map(
+        e ->
+          CommandsResponseAlternative
+            .newBuilder(e.toCommandsResponseAlternative())
+            .clearAlternativeId()
+            .build()
+      )
+      .collect(Collectors.toList());
+  }
+
+  private Set<String> ids(List<CommandsResponseAlternativeWithMetadata> alternatives) {
+    return alternatives.stream().map(e -> e.alternativeId).collect(Collectors.toSet());
+  }
+
+  @Test
+  public void testParallelMatchesSerial() {
+    String[] transcripts = {
+      "go to line 2",
+      "delete line 3",
+      "select line 1",
+      "go to line 2",
+      "copy line 5",
+      "next line",
+      "undo",
+      "go to function f",
+    };
+
+    EditorStateWithMetadata state = state();
+    List<CommandsResponseAlternativeWithMetadata> parallel = transcriptEvaluator.evaluateTranscripts(
+      parse(state, transcripts),
+      state
+    );
+
+    // one transcript at a time, each finished before the next starts, deduplicated the same way.
+    List<CommandsResponseAlternativeWithMetadata> serial = new ArrayList<>();
+    Set<List<Command>> seen = new HashSet<>();
+    for (String transcript : transcripts) {
+      EditorStateWithMetadata serialState = state();
+      List<CommandsResponseAlternativeWithMetadata> alternatives = transcriptEvaluator.evaluateTranscripts(
+        parse(serialState, transcript),
+        serialState
+      );
+      for (CommandsResponseAlternativeWithMetadata alternative : alternatives) {
+        if (
+          alternative.commands.get(0).getType() == CommandType.COMMAND_TYPE_INVALID ||
+          seen.add(alternative.commands)
+        ) {
+          serial.add(alternative);
+        }
+      }
+    }
+
+    assertTrue(parallel.size() > 1);
+    assertEquals(withoutIds(serial), withoutIds(parallel));
+  }
+
+  @Test
+  public void testCacheHit() {
+    EditorStateWithMetadata state = state();
+    List<CommandsResponseAlternativeWithMetadata> evaluated = transcriptEvaluator.evaluateTranscripts(
+      parse(state, "delete line 3", "go to line 2"),
+      state
+    );
+    long size = transcriptEvaluator.evaluations.size();
+
+    List<ParsedTranscript> parsed = parse(state, "delete line 3", "go to line 2");
+    List<CommandsResponseAlternativeWithMetadata> cached = transcriptEvaluator.evaluateTranscripts(
+      parsed,
+      state
+    );
+    assertEquals(size, transcriptEvaluator.evaluations.size());
+    assertEquals(withoutIds(evaluated), withoutIds(cached));
+    assertTrue(ids(evaluated).stream().noneMatch(ids(cached)::contains));
+    assertEquals(cached.size(), ids(cached).size());
+    for (CommandsResponseAlternativeWithMetadata alternative : cached) {
+      assertTrue(parsed.stream().anyMatch(e -> e == alternative.parsed));
+    }
+
+    // changing what's returned doesn't change what's cached.
+    cached.get(0).commands.clear();
+    cached.get(0).description = Optional.of("changed");
+    List<CommandsResponseAlternativeWithMetadata> again = transcriptEvaluator.evaluateTranscripts(
+      parse(state, "delete line 3", "go to line 2"),
+      state
+    );
+    assertEquals(withoutIds(evaluated), withoutIds(again));
+    assertTrue(ids(again).stream().noneMatch(ids(cached)::contains));
+  }
+
+  @Test
+  public void testRepeatAndInvalidNotCached() {
+    EditorStateWithMetadata state = state();
+    component.history().add(state.getToken(), "go to line 2");
+    long size = transcriptEvaluator.evaluations.size();
+
+    List<CommandsResponseAlternativeWithMetadata> repeated = transcriptEvaluator.evaluateTranscripts(
+      parse(state, "repeat"),
+      state
+    );
+    assertNotEquals(CommandType.COMMAND_TYPE_INVALID, repeated.get(0).commands.get(0).getType());
+
+    List<CommandsResponseAlternativeWithMetadata> invalid = transcriptEvaluator.evaluateTranscripts(
+      Arrays.asList(invalid("not a command")),
+      state
+    );
+    assertEquals(CommandType.COMMAND_TYPE_INVALID, invalid.get(0).commands.get(0).getType());
+    assertEquals(size, transcriptEvaluator.evaluations.size());
+
+    transcriptEvaluator.evaluateTranscripts(parse(state, "go to line 2"), state);
+    assertEquals(size + 1, transcriptEvaluator.evaluations.size());
+  }
+}
@@ -0,0 +1,129 @@
+package core.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.BaseTest;
+import core.gen.rpc.Language;
+import org.junit.jupiter.api.Test;
+
+public class ParseSnapshotTest extends BaseTest {
+
+  private ParseSnapshot snapshot(String source, String firstCall, String secondCall) {
+    ParseSnapshot snapshot = new ParseSnapshot(source, Language.LANGUAGE_PYTHON);
+    int module = snapshot.open("module", "", 0, source.length());
+    int first = snapshot.open("call", "", 0, firstCall.length());
+    snapshot.close(snapshot.open("identifier", "function", 0, firstCall.length() - 2));
+    snapshot.close(first);
+    int start = source.length() - secondCall.length() - 1;
+    int second = snapshot.open("call", "", start, start + secondCall.length());
+    snapshot.close(snapshot.open("identifier", "function", start, start + secondCall.length() - 2));
+    snapshot.close(second);
+    snapshot.close(module);
+    return snapshot;
+  }
+
+  @Test
+  public void testReuseOutsideOfEdit() {
+    String previousSource =
+      "first_function_call()\n" + "\n".repeat(20) + "second_function_call()\n";
+    String source =
+      "first_function_call()\n" +
+      "\n".repeat(10) +
+      "x = 1\n" +
+      "\n".repeat(10) +
+      "second_function_call()\n";
+    ParseSnapshot previous = snapshot(
+      previousSource,
+      "first_function_call()",
+      "second_function_call()"
+    );
+
+    ParseSnapshot current = new ParseSnapshot(source, Language.LANGUAGE_PYTHON);
+    ParseSnapshot.Edit edit = current.editFrom(previous);
+    int module = current.open("module", "", 0, source.length());
+    assertFalse(edit.reuse("module", "", 0, source.length()));
+    assertTrue(edit.reuse("call", "", 0, 21));
+    int start = source.length() - 23;
+    assertFalse(edit.reuse("expression_statement", "", start, start + 22));
+    assertTrue(edit.reuse("call", "", start, start + 22));
+    current.close(module);
+
+    ParseTree tree = current.toParseTree();
+    assertEquals(2, tree.getChildren().size());
+    assertEquals("second_function_call()", tree.getChildren().get(1).getCode());
+    ParseTree name = tree.getChildren().get(1).getChildren().get(0);
+    assertEquals("function", name.getType());
+    assertEquals("second_function_call", name.getChildren().get(0).getCode());
+  }
+
+  @Test
+  public void testNoReuseNextToEdit() {
+    String previousSource = "first_function_call()\nsecond_function_call()\n";
+    String source = "first_function_call()\nx\nsecond_function_call()\n";
+    ParseSnapshot previous = snapshot(
+      previousSource,
+      "first_function_call()",
+      "second_function_call()"
+    );
+
+    ParseSnapshot.Edit edit = new ParseSnapshot(source, Language.LANGUAGE_PYTHON)
+      .editFrom(previous);
+    assertFalse(edit.reuse("call", "", 0, 21));
+    assertFalse(edit.reuse("call", "", source.length() - 23, source.length() - 1));
+  }
+
+  @Test
+  public void testNoReuseWithinLookaheadOfEdit() {
+    String previousSource =
+      "first_function_call()\n" + "\n".repeat(20) + "second_function_call()\n";
+    String source =
+      "first_function_call()\n" +
+      "\n".repeat(3) +
+      "x\n" +
+      "\n".repeat(17) +
+      "second_function_call()\n";
+    ParseSnapshot previous = snapshot(
+      previousSource,
+      "first_function_call()",
+      "second_function_call()"
+    );
+
+    // the edit doesn't touch the first call, but it's close enough that the lexer could have seen it.
+    ParseSnapshot.Edit edit = new ParseSnapshot(source, Language.LANGUAGE_PYTHON)
+      .editFrom(previous);
+    assertFalse(edit.reuse("call", "", 0, 21));
+    assertTrue(edit.reuse("call", "", source.length() - 23, source.length() - 1));
+  }
+
+  @Test
+  public void testNoReuseOfRecoveredSubtree() {
+    String previousSource = "f(\n" + "\n".repeat(20) + "g h\n" + "\n".repeat(20) + "y\n";
+    String source = "f(\n" + "\n".repeat(20) + "g h\n" + "\n".repeat(20) + "z\n";
+    ParseSnapshot previous = new ParseSnapshot(previousSource, Language.LANGUAGE_PYTHON);
+    int module = previous.open("module", "", 0, previousSource.length());
+    int call = previous.open("call", "", 0, 2);
+    previous.close(previous.open("identifier", "function", 0, 1));
+    int arguments = previous.open("argument_list", "arguments", 1, 2);
+    previous.close(previous.open("(", "", 1, 2));
+    previous.close(previous.open(")", "", 2, 2));
+    previous.close(arguments);
+    previous.close(call);
+    int error = previous.open("ERROR", "", 23, 26);
+    previous.close(previous.open("identifier", "", 23, 24));
+    previous.close(previous.open("identifier", "", 25, 26));
+    previous.close(error);
+    previous.close(module);
+
+    // a missing token or an error node anywhere in a subtree keeps it from being reused, even
+    // far from the edit.
+    ParseSnapshot.Edit edit = new ParseSnapshot(source, Language.LANGUAGE_PYTHON)
+      .editFrom(previous);
+    assertFalse(edit.reuse("call", "", 0, 2));
+    assertFalse(edit.reuse("argument_list", "arguments", 1, 2));
+    assertTrue(edit.reuse("identifier", "function", 0, 1));
+    assertFalse(edit.reuse("ERROR", "", 23, 26));
+    assertTrue(edit.reuse("identifier", "", 23, 24));
+  }
+}
@@ -0,0 +1,133 @@
+package core.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.BaseTest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class SequenceAutomatonTest extends BaseTest {
+
+  private SequenceAutomaton.Expression symbol(String symbol) {
+    return SequenceAutomaton.Expression.symbol(symbol);
+  }
+
+  private SequenceAutomaton.Expression sequence(SequenceAutomaton.Expression... children) {
+    return SequenceAutomaton.Expression.sequence(List.of(children));
+  }
+
+  private SequenceAutomaton.Expression alternation(SequenceAutomaton.Expression... children) {
+    return SequenceAutomaton.Expression.alternation(List.of(children));
+  }
+
+  // every sequence of symbols up to the given length, including the empty one.
+  private List<List<String>> sequences(List<String> symbols, int length) {
+    List<List<String>> result = new ArrayList<>();
+    result.add(List.of());
+    for (int i = 0; i < result.size(); i++) {
+      List<String> current = result.get(i);
+      if (current.size() == length) {
+        continue;
+      }
+
+      for (String symbol : symbols) {
+        List<String> next = new ArrayList<>(current);
+        next.add(symbol);
+        result.add(next);
+      }
+    }
+
+    return result;
+  }
+
+  @Test
+  public void testStarAcceptsManyRepetitions() {
+    SequenceAutomaton automaton = SequenceAutomaton.compile(
+      sequence(symbol("a"), SequenceAutomaton.Expression.star(symbol("b")), symbol("c"))
+    );
+    assertTrue(automaton.accepts(List.of("a", "c")));
+    assertTrue(automaton.accepts(List.of("a", "b", "c")));
+
+    List<String> input = new ArrayList<>(List.of("a"));
+    input.addAll(Collections.nCopies(20, "b"));
+    input.add("c");
+    assertTrue(automaton.accepts(input));
+    assertFalse(automaton.accepts(input.subList(0, input.size() - 1)));
+  }
+
+  @Test
+  public void testPlusAcceptsManyRepetitions() {
+    SequenceAutomaton automaton = SequenceAutomaton.compile(
+      SequenceAutomaton.Expression.plus(sequence(symbol("a"), symbol("b")))
+    );
+    assertFalse(automaton.accepts(List.of()));
+    assertTrue(automaton.accepts(List.of("a", "b")));
+
+    List<String> input = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      input.add("a");
+      input.add("b");
+    }
+    assertTrue(automaton.accepts(input));
+    assertFalse(automaton.accepts(input.subList(0, input.size() - 1)));
+  }
+
+  @Test
+  public void testOptionalChildIsPropagated() {
+    GrammarNode parent = new GrammarNode("parent");
+    GrammarNode child = new GrammarNode("child");
+    GrammarNode first = new GrammarNode("first");
+    GrammarNode last = new GrammarNode("last");
+    GrammarNode inner = new GrammarNode("inner");
+    child.addAllowedExpression(
+      SequenceAutomaton.Expression.optional(symbol("inner")),
+      List.of(inner)
+    );
+    parent.addAllowedExpression(
+      sequence(symbol("first"), symbol("child"), symbol("last")),
+      List.of(first, child, last)
+    );
+
+    assertFalse(parent.isAllowedSequence(List.of("first", "last")));
+    parent.propagateOptionalSequences();
+    assertTrue(parent.isAllowedSequence(List.of("first", "last")));
+    assertTrue(parent.isAllowedSequence(List.of("first", "child", "last")));
+    assertFalse(parent.isAllowedSequence(List.of("first", "child", "child", "last")));
+  }
+
+  @Test
+  public void testMinimizedAcceptsSameSequences() {
+    List<SequenceAutomaton.Expression> expressions = List.of(
+      SequenceAutomaton.Expression.star(
+        alternation(symbol("a"), sequence(symbol("a"), symbol("a")))
+      ),
+      sequence(
+        symbol("a"),
+        SequenceAutomaton.Expression.optional(symbol("b")),
+        SequenceAutomaton.Expression.star(alternation(symbol("c"), symbol("b")))
+      ),
+      alternation(
+        sequence(symbol("a"), SequenceAutomaton.Expression.plus(symbol("b"))),
+        sequence(symbol("a"), symbol("b"), SequenceAutomaton.Expression.star(symbol("b"))),
+        sequence(SequenceAutomaton.Expression.optional(symbol("c")), symbol("EOF"))
+      )
+    );
+
+    for (SequenceAutomaton.Expression expression : expressions) {
+      SequenceAutomaton minimized = SequenceAutomaton.compile(expression);
+      SequenceAutomaton unminimized = SequenceAutomaton.compile(expression, false);
+      assertTrue(minimized.size() <= unminimized.size(), expression.toString());
+      for (List<String> input : sequences(List.of("a", "b", "c"), 6)) {
+        String message = expression + " " + input;
+        assertEquals(unminimized.accepts(input), minimized.accepts(input), message);
+      }
+    }
+
+    // (a | a a)* is a*, which needs a single state.
+    assertEquals(1, SequenceAutomaton.compile(expressions.get(0)).size());
+  }
+}
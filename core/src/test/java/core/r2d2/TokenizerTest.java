@@ -41,4 +41,28 @@ public class TokenizerTest extends BaseTest {
     assertTokenizedMatches("can't", "NL can't");
     assertTokenizedMatches("Can't", "NL C can't");
   }
+
+  @Test
+  public void testBoundedPrefix() {
+    Tokenizer tokenizer = component.tokenizer();
+    String source = "";
+    for (int i = 0; i < 100; i++) {
+      source += "def f" + i + "():\n    if x:\n\n        return " + i + "\n";
+    }
+
+    int stop = source.length() - 10;
+    List<String> full = tokenizer
+      .tokenizeSourcePrefix(source.substring(0, stop))
+      .stream()
+      .map(t -> t.modelCodeRepresentation())
+      .collect(Collectors.toList());
+    List<String> bounded = tokenizer
+      .tokenizeSourcePrefix(source, stop, 100)
+      .stream()
+      .map(t -> t.modelCodeRepresentation())
+      .collect(Collectors.toList());
+
+    assertTrue(bounded.size() >= 100 && bounded.size() < full.size());
+    assertEquals(full.subList(full.size() - bounded.size(), full.size()), bounded);
+  }
 }
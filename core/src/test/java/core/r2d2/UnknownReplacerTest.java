@@ -31,4 +31,16 @@ public class UnknownReplacerTest extends BaseTest {
     assertTrue(s.strings.get(1).matches("foo bar"), "Couldn't match " + s.strings.get(1));
     assertEquals("foo bar", unknownReplacer.resolveUnknowns(s.strings.get(1), s.unknowns));
   }
+
+  @Test
+  public void testSameStringsGetSameUnknowns() {
+    List<String> testStrings = Arrays.asList("foo subparsersaaa bar", "baz");
+    UnknownReplacer unknownReplacer = new UnknownReplacer(
+      new HashSet<>(Arrays.asList("foo", "bar"))
+    );
+    assertEquals(
+      unknownReplacer.stringsWithUnknowns(testStrings).strings,
+      unknownReplacer.stringsWithUnknowns(testStrings).strings
+    );
+  }
 }
@@ -0,0 +1,184 @@
+package core.selector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.BaseTest;
+import core.gen.rpc.Language;
+import core.util.ObjectType;
+import core.util.Range;
+import core.util.SearchDirection;
+import core.util.SourceIndex;
+import core.util.selection.Selection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class SelectorMapTest extends BaseTest {
+
+  private SelectorMap selectorMap = component
+    .selectorMapFactory()
+    .create(Language.LANGUAGE_PYTHON);
+  private SelectorMap wholeSourceSelectorMap = wholeSourceSelectorMap();
+
+  // searches without windows or the word index, to compare with the shared selector map's.
+  private static SelectorMap wholeSourceSelectorMap() {
+    PythonSelectorMap result = new PythonSelectorMap() {
+      @Override
+      protected boolean searchWholeSource() {
+        return true;
+      }
+    };
+    component.inject(result);
+    return result;
+  }
+
+  private String source() {
+    // a blank stretch in the middle forces windows to grow past it, and the varied lines put
+    // numbers and symbols some distance apart.
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < 64; i++) {
+      if (i >= 20 && i < 40) {
+        result.append("\n");
+      } else if (i % 9 == 0) {
+        result.append("  total = total + 2.5 * items[" + i + "]\n");
+      } else if (i % 4 == 0) {
+        result.append("  # note\n");
+      } else {
+        result.append("  word" + i + " other\n");
+      }
+    }
+
+    return result.toString();
+  }
+
+  private List<Integer> cursors(String source) {
+    // the start and end of the file, and positions around the edges of the first few windows.
+    SourceIndex index = new SourceIndex(source);
+    List<Integer> result = new ArrayList<>(Arrays.asList(0, source.length()));
+    for (int line : new int[] { 1, 2, 3, 4, 5, 8, 9, 17, 19, 20, 21, 30, 39, 40, 41, 60, 62, 63 }) {
+      Range range = index.lines(line, line);
+      result.add(range.start);
+      result.add(Math.min(range.start + 3, range.stop));
+      result.add(range.stop);
+    }
+
+    return result;
+  }
+
+  private List<Range> ranges(SelectorMap map, String source, int cursor, Selection selection) {
+    return map.rawSelectors
+      .get(selection.object)
+      .apply(new RawSelectionContext(source, cursor, selection))
+      .collect(Collectors.toList());
+  }
+
+  private void assertWindowedMatchesWholeSource(Selection.Builder builder) {
+    String source = source();
+    Selection selection = builder.build();
+    for (int cursor : cursors(source)) {
+      assertEquals(
+        ranges(wholeSourceSelectorMap, source, cursor, selection),
+        ranges(selectorMap, source, cursor, selection),
+        selection + " at " + cursor
+      );
+    }
+  }
+
+  @Test
+  public void testWord() {
+    assertWindowedMatchesWholeSource(new Selection.Builder(ObjectType.WORD));
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.WORD).setDirection(SearchDirection.NEXT)
+    );
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.WORD).setDirection(SearchDirection.PREVIOUS)
+    );
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.WORD).setDirection(SearchDirection.NEXT).setCount(3)
+    );
+  }
+
+  @Test
+  public void testTerm() {
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.TERM).setAbsoluteRange(new Range(1))
+    );
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.TERM).setDirection(SearchDirection.NEXT)
+    );
+  }
+
+  @Test
+  public void testSymbol() {
+    assertWindowedMatchesWholeSource(new Selection.Builder(ObjectType.SYMBOL));
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.SYMBOL).setDirection(SearchDirection.NEXT)
+    );
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.SYMBOL).setDirection(SearchDirection.PREVIOUS)
+    );
+  }
+
+  @Test
+  public void testNumber() {
+    assertWindowedMatchesWholeSource(new Selection.Builder(ObjectType.NUMBER));
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.NUMBER).setDirection(SearchDirection.NEXT)
+    );
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.NUMBER).setDirection(SearchDirection.PREVIOUS)
+    );
+  }
+
+  @Test
+  public void testLine() {
+    assertWindowedMatchesWholeSource(new Selection.Builder(ObjectType.LINE));
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.LINE).setDirection(SearchDirection.NEXT)
+    );
+    assertWindowedMatchesWholeSource(
+      new Selection.Builder(ObjectType.LINE).setDirection(SearchDirection.PREVIOUS)
+    );
+  }
+
+  private List<Range> phraseRanges(SelectorMap map, String source, String phrase) {
+    // matches are cached by the source string's identity, so search a copy each time.
+    return map.rawSelectors
+      .get(ObjectType.PHRASE)
+      .apply(
+        new RawSelectionContext(
+          new String(source),
+          0,
+          new Selection.Builder(ObjectType.PHRASE).setName(phrase).build()
+        )
+      )
+      .collect(Collectors.toList());
+  }
+
+  private List<Range> assertIndexedMatchesWholeSource(String source, String phrase) {
+    List<Range> expected = phraseRanges(wholeSourceSelectorMap, source, phrase);
+    assertEquals(expected, phraseRanges(selectorMap, source, phrase), phrase);
+    return expected;
+  }
+
+  @Test
+  public void testPhrase() {
+    String source =
+      "fooBar = FooBar(foo_bar, FOO_BAR)\n" +
+      "print(foo-bar, foo\n  bar, food_bar, xfooBar)\n" +
+      "item2 = items[2] + item_2 + item 2\n" +
+      "second_item = (two + 2)\n";
+    assertFalse(assertIndexedMatchesWholeSource(source, "foo bar").isEmpty());
+    assertFalse(assertIndexedMatchesWholeSource(source, "bar").isEmpty());
+    assertFalse(assertIndexedMatchesWholeSource(source, "second item").isEmpty());
+    assertTrue(assertIndexedMatchesWholeSource(source, "missing").isEmpty());
+    // numbers are converted, and symbols fall back to scanning the whole source.
+    assertIndexedMatchesWholeSource(source, "item two");
+    assertIndexedMatchesWholeSource(source, "two");
+    assertIndexedMatchesWholeSource(source, "left paren");
+  }
+}
@@ -0,0 +1,157 @@
+package core.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.BaseTest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+public class SessionSchedulerTest extends BaseTest {
+
+  private SessionScheduler sessionScheduler = new SessionScheduler();
+
+  // runs tasks added by add on a mailbox that's blocked until they've all been added.
+  private void run(Consumer<SessionScheduler.Mailbox> add) throws InterruptedException {
+    SessionScheduler.Mailbox mailbox = sessionScheduler.mailbox("test");
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    mailbox.execute(
+      () -> {
+        started.countDown();
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {}
+      }
+    );
+
+    started.await();
+    add.accept(mailbox);
+    mailbox.execute(done::countDown);
+    blocked.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testOrder() throws InterruptedException {
+    List<String> result = new ArrayList<>();
+    run(
+      mailbox -> {
+        for (int i = 0; i < 5; i++) {
+          String value = String.valueOf(i);
+          mailbox.execute(() -> result.add(value));
+        }
+      }
+    );
+    assertEquals(Arrays.asList("0", "1", "2", "3", "4"), result);
+  }
+
+  @Test
+  public void testCoalescing() throws InterruptedException {
+    List<String> result = new ArrayList<>();
+    run(
+      mailbox -> {
+        mailbox.executeCoalescing("state", () -> result.add("a"));
+        mailbox.executeCoalescing("state", () -> result.add("b"));
+        mailbox.execute(() -> result.add("c"));
+        mailbox.executeCoalescing("state", () -> result.add("d"));
+      }
+    );
+    assertEquals(Arrays.asList("b", "c", "d"), result);
+  }
+
+  @Test
+  public void testReplacing() throws InterruptedException {
+    List<String> result = new ArrayList<>();
+    run(
+      mailbox -> {
+        mailbox.executeReplacing("endpoint", () -> result.add("a"));
+        mailbox.execute(() -> result.add("b"));
+        mailbox.executeReplacing("endpoint", () -> result.add("c"));
+        mailbox.executeReplacing("other", () -> result.add("d"));
+      }
+    );
+    assertEquals(Arrays.asList("b", "c", "d"), result);
+  }
+
+  @Test
+  public void testAudioRunsDuringEvaluation() throws InterruptedException {
+    SessionScheduler scheduler = new SessionScheduler(1, 4, 100);
+    SessionScheduler.Mailbox mailbox = scheduler.mailbox("test");
+    List<String> result = new ArrayList<>();
+    CountDownLatch evaluating = new CountDownLatch(1);
+    CountDownLatch evaluated = new CountDownLatch(1);
+    CountDownLatch audio = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    mailbox.execute(
+      () ->
+        scheduler
+          .evaluations()
+          .execute(
+            () -> {
+              evaluating.countDown();
+              try {
+                evaluated.await();
+              } catch (InterruptedException e) {}
+              mailbox.execute(
+                () -> {
+                  result.add("response");
+                  done.countDown();
+                }
+              );
+            }
+          )
+    );
+
+    // the session's only pool thread is free to handle audio while the evaluation waits.
+    assertTrue(evaluating.await(10, TimeUnit.SECONDS));
+    mailbox.execute(
+      () -> {
+        result.add("audio");
+        audio.countDown();
+      }
+    );
+    assertTrue(audio.await(10, TimeUnit.SECONDS));
+
+    evaluated.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("audio", "response"), result);
+  }
+
+  @Test
+  public void testEvaluationsBounded() throws InterruptedException {
+    SessionScheduler scheduler = new SessionScheduler(1, 1, 1);
+    CountDownLatch evaluating = new CountDownLatch(1);
+    CountDownLatch evaluated = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    scheduler
+      .evaluations()
+      .execute(
+        () -> {
+          evaluating.countDown();
+          try {
+            evaluated.await();
+          } catch (InterruptedException e) {}
+        }
+      );
+
+    // one evaluation is running and one is waiting, so there's no room for another.
+    assertTrue(evaluating.await(10, TimeUnit.SECONDS));
+    scheduler.evaluations().execute(done::countDown);
+    assertThrows(
+      RejectedExecutionException.class,
+      () -> scheduler.evaluations().execute(() -> {})
+    );
+
+    evaluated.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,69 @@
+package core.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import core.BaseTest;
+import core.gen.rpc.Change;
+import core.gen.rpc.EditorState;
+import core.util.SourceHasher;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+public class SourceChangesTest extends BaseTest {
+
+  private SourceChanges sourceChanges = new SourceChanges();
+  private SourceHasher sourceHasher = new SourceHasher();
+
+  private Change change(int start, int stop, String substitution) {
+    return Change.newBuilder().setStart(start).setStop(stop).setSubstitution(substitution).build();
+  }
+
+  private Optional<String> apply(String source, Change... changes) {
+    EditorState.Builder editorState = EditorState
+      .newBuilder()
+      .setSourceBaseHash(sourceHasher.hash(source));
+    for (Change change : changes) {
+      editorState.addSourceChanges(change);
+    }
+
+    return sourceChanges.apply(source, sourceHasher.hash(source), editorState.build());
+  }
+
+  @Test
+  public void testApply() {
+    assertEquals(
+      Optional.of("def bar(x):\n  return x\n"),
+      apply("def foo():\n  return x\n", change(4, 7, "bar"), change(8, 8, "x"))
+    );
+    assertEquals(Optional.of("a"), apply("a"));
+  }
+
+  @Test
+  public void testApplyUnsorted() {
+    assertEquals(
+      Optional.of("Xbc def"),
+      apply("abc", change(3, 3, " def"), change(0, 1, "X"))
+    );
+  }
+
+  @Test
+  public void testRejectInvalid() {
+    assertEquals(Optional.empty(), apply("abcdef", change(1, 4, "x"), change(3, 5, "y")));
+    assertEquals(Optional.empty(), apply("abcdef", change(3, 2, "x")));
+    assertEquals(Optional.empty(), apply("abcdef", change(-1, 2, "x")));
+    assertEquals(Optional.empty(), apply("abcdef", change(4, 7, "x")));
+  }
+
+  @Test
+  public void testResyncOnHashMismatch() {
+    EditorState editorState = EditorState
+      .newBuilder()
+      .setSourceBaseHash(sourceHasher.hash("abc"))
+      .addSourceChanges(change(0, 1, "x"))
+      .build();
+    assertEquals(
+      Optional.empty(),
+      sourceChanges.apply("abd", sourceHasher.hash("abd"), editorState)
+    );
+  }
+}
@@ -0,0 +1,46 @@
+package core.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import core.BaseTest;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class SourceIndexTest extends BaseTest {
+
+  @Test
+  public void testLine() {
+    SourceIndex index = new SourceIndex("a\n\nbc\n");
+    assertEquals(0, index.line(0));
+    assertEquals(0, index.line(1));
+    assertEquals(1, index.line(2));
+    assertEquals(2, index.line(3));
+    assertEquals(3, index.line(6));
+    assertEquals(4, index.line(7));
+    assertEquals(new Range(2, 4), index.lineRange(new Range(3, 6)));
+  }
+
+  @Test
+  public void testLineStartAndEnd() {
+    SourceIndex index = new SourceIndex("f\n  def foo\n");
+    assertEquals(2, index.lineStart(7));
+    assertEquals(11, index.lineEnd(7));
+    assertEquals(1, index.lineEnd(1));
+    assertEquals(12, index.lineStart(12));
+    assertEquals(12, index.lineEnd(12));
+  }
+
+  @Test
+  public void testLineNonWhitespaceStart() {
+    SourceIndex index = new SourceIndex("f\n  def foo\n \n");
+    assertEquals(4, index.lineNonWhitespaceStart(9));
+    assertEquals("  ", index.indentation(9));
+    assertEquals(13, index.lineNonWhitespaceStart(12));
+  }
+
+  @Test
+  public void testNonWhitespaceRanges() {
+    SourceIndex index = new SourceIndex(" abc xyz \n ");
+    assertEquals(Arrays.asList(new Range(1, 4), new Range(5, 8)), index.nonWhitespaceRanges());
+  }
+}
@@ -25,6 +25,8 @@ public class Offline {
     Map<List<String>, Subcommand> subcommands = new HashMap<>() {
       {
         put(Arrays.asList("benchmark"), component.benchmarkRunner());
+        put(Arrays.asList("benchmark-post-processor"), component.postProcessorBenchmark());
+        put(Arrays.asList("benchmark-tokenizer"), component.tokenizerBenchmark());
         put(Arrays.asList("debug-trees", "print-tree"), component.treePrinter());
         put(Arrays.asList("generate-tutorial"), component.tutorialGenerator());
       }
@@ -11,7 +11,9 @@ import dagger.Component;
 import grammarflattener.GrammarFlattener;
 import javax.inject.Singleton;
 import offline.subcommands.BenchmarkRunner;
+import offline.subcommands.PostProcessorBenchmark;
 import offline.subcommands.SmallRepositories;
+import offline.subcommands.TokenizerBenchmark;
 import offline.subcommands.TreePrinter;
 import offline.subcommands.TutorialGenerator;
 import toolbelt.languages.LanguageDeterminer;
@@ -35,8 +37,12 @@ public interface OfflineComponent {
 
   public ParseTreeToAstConverterFactory parseTreeToAstConverterFactory();
 
+  public PostProcessorBenchmark postProcessorBenchmark();
+
   public SmallRepositories smallRepositories();
 
+  public TokenizerBenchmark tokenizerBenchmark();
+
   public TreePrinter treePrinter();
 
   public TutorialGenerator tutorialGenerator();
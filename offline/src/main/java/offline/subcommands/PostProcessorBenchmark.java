@@ -0,0 +1,130 @@
+package offline.subcommands;
+
+import core.gen.rpc.Language;
+import core.parser.ParseTree;
+import core.parser.Parser;
+import core.parser.PostProcessor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import net.sourceforge.argparse4j.inf.Subparsers;
+import offline.Subcommand;
+import toolbelt.languages.LanguageDeterminer;
+
+@Singleton
+public class PostProcessorBenchmark implements Subcommand {
+
+  @Inject
+  LanguageDeterminer languageDeterminer;
+
+  @Inject
+  SmallRepositories smallRepositories;
+
+  @Inject
+  Parser parser;
+
+  @Inject
+  PostProcessor postProcessor;
+
+  @Inject
+  public PostProcessorBenchmark() {}
+
+  private ParseTree copy(ParseTree node, Optional<ParseTree> parent) {
+    ParseTree result = new ParseTree(
+      node.getType(),
+      node.getName(),
+      node.getSource(),
+      node.getStart(),
+      node.getStop(),
+      parent
+    );
+    result.setChildren(
+      node
+        .getChildren()
+        .stream()
+        .map(child -> copy(child, Optional.of(result)))
+        .collect(Collectors.toList())
+    );
+    return result;
+  }
+
+  private int size(ParseTree node) {
+    return 1 + node.getChildren().stream().mapToInt(child -> size(child)).sum();
+  }
+
+  private long time(Language language, List<ParseTree> trees, int count) {
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      // post-processing modifies trees, so each run gets its own copies.
+      List<ParseTree> copies = trees
+        .stream()
+        .map(tree -> copy(tree, Optional.empty()))
+        .collect(Collectors.toList());
+
+      long start = System.currentTimeMillis();
+      for (ParseTree tree : copies) {
+        postProcessor.postProcessParseTree(language, tree);
+      }
+
+      long time = System.currentTimeMillis() - start;
+      // the first run is a warmup for the JIT.
+      if (i > 0) {
+        total += time;
+      }
+
+      int nodes = copies.stream().mapToInt(tree -> size(tree)).sum();
+      System.out.println("Run: " + (i + 1) + ", Time: " + time + ", Nodes: " + nodes);
+    }
+
+    return count > 1 ? total / (count - 1) : total;
+  }
+
+  public void run(Language language, int count) {
+    // Parser.parse already post-processes, so time the converted trees as they come from it.
+    List<ParseTree> parsed = smallRepositories
+      .paths(language)
+      .stream()
+      .map(
+        path -> {
+          try {
+            String source = new String(Files.readAllBytes(path));
+            return parser.parseWithoutPostProcessing(source, language);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      )
+      .collect(Collectors.toList());
+
+    long time = time(language, parsed, count);
+    System.out.println("Average Time: " + time + " (" + parsed.size() + " files)");
+  }
+
+  @Override
+  public void configureSubparsers(Subparsers subparsers) {
+    Subparser parser = subparsers
+      .addParser("benchmark-post-processor")
+      .help(
+        "Time post-processing small repositories parse trees. Run on builds before and after a " +
+        "change to compare them."
+      );
+    parser.addArgument("--language").type(String.class).help("Language used").required(true);
+    parser.addArgument("--count").type(Integer.class).help("Number of times to run");
+  }
+
+  @Override
+  public void run(Namespace namespace) {
+    Integer count = namespace.getInt("count");
+    if (count == null) {
+      count = 10;
+    }
+
+    run(languageDeterminer.fromApiName(namespace.getString("language")), count);
+  }
+}
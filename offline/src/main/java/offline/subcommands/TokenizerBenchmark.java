@@ -0,0 +1,204 @@
+package offline.subcommands;
+
+import core.codeengine.AlphaStyle;
+import core.codeengine.Escaper;
+import core.codeengine.Resolver;
+import core.codeengine.Tokenizer;
+import core.gen.rpc.Language;
+import core.util.Contractions;
+import core.util.Range;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import net.sourceforge.argparse4j.inf.Subparsers;
+import offline.Subcommand;
+import toolbelt.languages.LanguageDeterminer;
+
+@Singleton
+public class TokenizerBenchmark implements Subcommand {
+
+  // the tokenizer from before lines were scanned by index, which matched a regex against a new
+  // substring for every token.
+  private static class RegexTokenizer extends Tokenizer {
+
+    private Pattern capsPascal = Pattern.compile("^([A-Z]+)[A-Z][a-z]");
+    private Pattern caps = Pattern.compile("^[A-Z]+");
+    private Pattern number = Pattern.compile("^[0-9]+");
+    private Pattern spaces = Pattern.compile("^\\s+");
+    private Pattern symbol = Pattern.compile("^[^A-Za-z0-9]");
+
+    public RegexTokenizer(Contractions contractions, Escaper escaper, Resolver resolver) {
+      super(contractions, escaper, resolver);
+    }
+
+    @Override
+    protected List<Token> tokenizeLine(
+      String source,
+      int position,
+      String line,
+      boolean lastLine
+    ) {
+      List<Token> ret = new ArrayList<Token>();
+      String remaining = line;
+      int lineStart = position;
+      while (remaining.length() > 0) {
+        Matcher m;
+        int consumed = 0;
+        if ((m = spaces.matcher(remaining)).find()) {
+          consumed = m.group(0).length();
+          if (position != lineStart && (lastLine || consumed != remaining.length())) {
+            for (int i = 0; i < consumed; i++) {
+              ret.add(new SpaceToken(source, new Range(position + i, position + i + 1)));
+            }
+          }
+        } else if ((m = symbol.matcher(remaining)).find()) {
+          consumed = m.group(0).length();
+          ret.add(new SymbolToken(source, new Range(position, position + consumed)));
+        } else if ((m = number.matcher(remaining)).find()) {
+          consumed = m.group(0).length();
+          ret.add(new NumberToken(source, new Range(position, position + consumed)));
+        } else {
+          AlphaStyle style;
+          if ((m = lowerCase.matcher(remaining)).find()) {
+            style = AlphaStyle.LOWERCASE;
+            consumed = m.group(0).length();
+          } else if ((m = capital.matcher(remaining)).find()) {
+            style = AlphaStyle.CAPITAL;
+            consumed = m.group(0).length();
+          } else if ((m = capsPascal.matcher(remaining)).find()) {
+            style = AlphaStyle.CAPS;
+            consumed = m.group(1).length();
+          } else {
+            (m = caps.matcher(remaining)).find();
+            style = AlphaStyle.CAPS;
+            consumed = m.group(0).length();
+          }
+          ret.add(new AlphaToken(source, new Range(position, position + consumed), style));
+        }
+        remaining = remaining.substring(consumed);
+        position += consumed;
+      }
+      return ret;
+    }
+  }
+
+  @Inject
+  LanguageDeterminer languageDeterminer;
+
+  @Inject
+  SmallRepositories smallRepositories;
+
+  @Inject
+  Tokenizer tokenizer;
+
+  @Inject
+  Contractions contractions;
+
+  @Inject
+  Escaper escaper;
+
+  @Inject
+  Resolver resolver;
+
+  @Inject
+  public TokenizerBenchmark() {}
+
+  // everything that distinguishes one token from another, since Token.equals only compares the
+  // model representation.
+  private List<String> describe(List<Tokenizer.Token> tokens) {
+    return tokens
+      .stream()
+      .map(
+        token ->
+          token.getClass().getSimpleName() +
+          " " +
+          token.modelCodeRepresentation() +
+          (token instanceof Tokenizer.CodeToken ? " " + ((Tokenizer.CodeToken) token).range : "")
+      )
+      .collect(Collectors.toList());
+  }
+
+  private long time(
+    String name,
+    Function<String, List<Tokenizer.Token>> tokenize,
+    List<String> sources,
+    int count
+  ) {
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      long start = System.currentTimeMillis();
+      long tokens = 0;
+      for (String source : sources) {
+        tokens += tokenize.apply(source).size();
+      }
+
+      long time = System.currentTimeMillis() - start;
+      // the first run is a warmup for the JIT.
+      if (i > 0) {
+        total += time;
+      }
+
+      System.out.println(name + " Run: " + (i + 1) + ", Time: " + time + ", Tokens: " + tokens);
+    }
+
+    return count > 1 ? total / (count - 1) : total;
+  }
+
+  public void run(Language language, int count) {
+    List<String> sources = smallRepositories
+      .paths(language)
+      .stream()
+      .map(
+        path -> {
+          try {
+            return new String(Files.readAllBytes(path));
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      )
+      .collect(Collectors.toList());
+
+    Tokenizer regexTokenizer = new RegexTokenizer(contractions, escaper, resolver);
+    int mismatches = 0;
+    for (String source : sources) {
+      if (!describe(tokenizer.tokenize(source)).equals(describe(regexTokenizer.tokenize(source)))) {
+        mismatches++;
+      }
+    }
+    System.out.println("Mismatched Files: " + mismatches + " (" + sources.size() + " files)");
+
+    long regexTime = time("Regex", regexTokenizer::tokenize, sources, count);
+    long scanTime = time("Scan", tokenizer::tokenize, sources, count);
+    System.out.println("Average Regex Time: " + regexTime + " (" + sources.size() + " files)");
+    System.out.println("Average Scan Time: " + scanTime + " (" + sources.size() + " files)");
+  }
+
+  @Override
+  public void configureSubparsers(Subparsers subparsers) {
+    Subparser parser = subparsers
+      .addParser("benchmark-tokenizer")
+      .help("Time tokenizing the small repositories corpus, before and after scanning by index.");
+    parser.addArgument("--language").type(String.class).help("Language used").required(true);
+    parser.addArgument("--count").type(Integer.class).help("Number of times to run");
+  }
+
+  @Override
+  public void run(Namespace namespace) {
+    Integer count = namespace.getInt("count");
+    if (count == null) {
+      count = 10;
+    }
+
+    run(languageDeterminer.fromApiName(namespace.getString("language")), count);
+  }
+}
@@ -19,6 +19,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
@@ -107,6 +108,19 @@ public class Logs {
     return result;
   }
 
+  /** Logs the time until the future returned by the operation completes. */
+  public static <T> CompletableFuture<T> logTimeAsync(
+    Logger logger,
+    String name,
+    Map<String, Object> data,
+    Supplier<CompletableFuture<T>> operation
+  ) {
+    long start = System.currentTimeMillis();
+    return operation
+      .get()
+      .whenComplete((result, e) -> logTime(logger, name, data, System.currentTimeMillis() - start));
+  }
+
   public static void logTime(
     Logger logger,
     String name,
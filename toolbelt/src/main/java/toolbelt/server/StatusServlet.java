@@ -1,6 +1,9 @@
 package toolbelt.server;
 
+import com.google.gson.Gson;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -12,6 +15,11 @@ public class StatusServlet extends HttpServlet {
   @Inject
   public StatusServlet() {}
 
+  // Additional fields for the status response, like cache stats.
+  protected Map<String, Object> details() {
+    return Map.of();
+  }
+
   protected void doGet(HttpServletRequest request, HttpServletResponse response)
     throws ServletException, IOException {
     String containerId = "";
@@ -23,10 +31,14 @@ public class StatusServlet extends HttpServlet {
       commitId = System.getenv("GIT_COMMIT");
     }
 
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("status", "ok");
+    status.put("c", containerId);
+    status.put("g", commitId);
+    status.putAll(details());
+
     response.setStatus(HttpServletResponse.SC_OK);
     response.setContentType("text/plain");
-    response
-      .getWriter()
-      .println("{\"status\":\"ok\",\"c\":\"" + containerId + "\",\"g\":\"" + commitId + "\"}");
+    response.getWriter().println(new Gson().toJson(status));
   }
 }